@@ -0,0 +1,104 @@
+package org.buffer.android.buffertextinputlayout;
+
+import android.content.Context;
+import android.graphics.Rect;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.text.method.PasswordTransformationMethod;
+import android.view.ContextThemeWrapper;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.EditText;
+import android.widget.LinearLayout;
+import android.widget.TextView;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+
+@RunWith(AndroidJUnit4.class)
+public class FlatBufferTextInputLayoutTest {
+
+    private static final int WIDTH = 480;
+
+    private Context context;
+
+    @Before
+    public void setUp() {
+        context = new ContextThemeWrapper(InstrumentationRegistry.getTargetContext(),
+                android.support.v7.appcompat.R.style.Theme_AppCompat_Light);
+    }
+
+    @Test
+    public void laysOutItsChildrenDirectly() {
+        final BufferTextInputLayout layout = createLayout(new FlatBufferTextInputLayout(context));
+        assertEquals(layout, layout.editText.getParent());
+        assertEquals(layout, layout.errorView.getParent());
+        assertEquals(layout, layout.findViewById(R.id.text_input_password_toggle).getParent());
+        assertEquals(layout, findCounter(layout).getParent());
+    }
+
+    @Test
+    public void matchesTheNestedLayout() {
+        final BufferTextInputLayout nested = createLayout(new BufferTextInputLayout(context));
+        final BufferTextInputLayout flat = createLayout(new FlatBufferTextInputLayout(context));
+        assertEquals(nested.getMeasuredHeight(), flat.getMeasuredHeight());
+        assertEquals(getRect(nested, nested.editText), getRect(flat, flat.editText));
+        assertEquals(getRect(nested, nested.errorView), getRect(flat, flat.errorView));
+        assertEquals(getRect(nested, findCounter(nested)), getRect(flat, findCounter(flat)));
+        assertEquals(getRect(nested, nested.findViewById(R.id.text_input_password_toggle)),
+                getRect(flat, flat.findViewById(R.id.text_input_password_toggle)));
+    }
+
+    private BufferTextInputLayout createLayout(BufferTextInputLayout layout) {
+        final EditText editText = new EditText(context);
+        editText.setHint("Hint");
+        editText.setTransformationMethod(PasswordTransformationMethod.getInstance());
+        layout.addView(editText, new LinearLayout.LayoutParams(
+                ViewGroup.LayoutParams.MATCH_PARENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        layout.setPasswordVisibilityToggleEnabled(true);
+        layout.setErrorEnabled(true);
+        layout.setError("Error");
+        layout.setCounterMaxLength(10);
+        layout.setCounterEnabled(true);
+        layout.measure(View.MeasureSpec.makeMeasureSpec(WIDTH, View.MeasureSpec.EXACTLY),
+                View.MeasureSpec.makeMeasureSpec(0, View.MeasureSpec.UNSPECIFIED));
+        layout.layout(0, 0, layout.getMeasuredWidth(), layout.getMeasuredHeight());
+        return layout;
+    }
+
+    private static TextView findCounter(BufferTextInputLayout layout) {
+        final TextView counter = findCounter(layout, layout);
+        assertNotNull(counter);
+        return counter;
+    }
+
+    private static TextView findCounter(BufferTextInputLayout layout, ViewGroup group) {
+        for (int i = 0; i < group.getChildCount(); i++) {
+            final View child = group.getChildAt(i);
+            if (child instanceof TextView && child != layout.editText
+                    && child != layout.errorView) {
+                return (TextView) child;
+            } else if (child instanceof ViewGroup) {
+                final TextView counter = findCounter(layout, (ViewGroup) child);
+                if (counter != null) {
+                    return counter;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static Rect getRect(ViewGroup layout, View view) {
+        final Rect rect = new Rect(0, 0, view.getWidth(), view.getHeight());
+        View child = view;
+        while (child != layout) {
+            rect.offset(child.getLeft(), child.getTop());
+            child = (View) child.getParent();
+        }
+        return rect;
+    }
+}
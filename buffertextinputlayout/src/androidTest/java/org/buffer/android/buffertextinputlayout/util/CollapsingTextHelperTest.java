@@ -0,0 +1,79 @@
+package org.buffer.android.buffertextinputlayout.util;
+
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.Canvas;
+import android.support.test.InstrumentationRegistry;
+import android.support.test.runner.AndroidJUnit4;
+import android.view.View;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+import static org.junit.Assert.assertEquals;
+
+@RunWith(AndroidJUnit4.class)
+public class CollapsingTextHelperTest {
+
+    private RecordingView view;
+    private CollapsingTextHelper helper;
+
+    @Before
+    public void setUp() {
+        view = new RecordingView(InstrumentationRegistry.getTargetContext());
+        view.layout(0, 0, 200, 100);
+        helper = new CollapsingTextHelper(view);
+        helper.setExpandedBounds(0, 0, 200, 100);
+        helper.setCollapsedBounds(0, 0, 200, 40);
+        helper.setExpandedTextSize(40);
+        helper.setCollapsedTextSize(20);
+        helper.setText("Hint");
+        helper.setTextureRenderingEnabled(true);
+        // Draw so that the textures are built
+        helper.draw(new Canvas(Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888)));
+        view.fullInvalidations = 0;
+    }
+
+    @Test
+    public void resumingAfterReleasingTexturesRedrawsTheWholeView() {
+        helper.setSuspended(true);
+        helper.releaseTextures();
+        assertEquals(0, view.fullInvalidations);
+        helper.setSuspended(false);
+        assertEquals(1, view.fullInvalidations);
+    }
+
+    @Test
+    public void reattachingAfterReleasingTexturesRedrawsTheWholeView() {
+        // As when a detached view is re-attached without its shown state changing
+        helper.releaseTextures();
+        helper.invalidateReleasedTextures();
+        assertEquals(1, view.fullInvalidations);
+        helper.invalidateReleasedTextures();
+        assertEquals(1, view.fullInvalidations);
+    }
+
+    @Test
+    public void drawingAgainForgetsReleasedTextures() {
+        helper.releaseTextures();
+        helper.draw(new Canvas(Bitmap.createBitmap(200, 100, Bitmap.Config.ARGB_8888)));
+        helper.invalidateReleasedTextures();
+        assertEquals(0, view.fullInvalidations);
+    }
+
+    private static final class RecordingView extends View {
+
+        int fullInvalidations;
+
+        RecordingView(Context context) {
+            super(context);
+        }
+
+        @Override
+        public void invalidate() {
+            fullInvalidations++;
+            super.invalidate();
+        }
+    }
+}
@@ -0,0 +1,63 @@
+package org.buffer.android.buffertextinputlayout;
+
+import android.graphics.PorterDuff;
+import android.graphics.PorterDuffColorFilter;
+import android.graphics.drawable.Drawable;
+import android.os.Build;
+import android.support.annotation.ColorInt;
+import android.support.v4.graphics.drawable.DrawableCompat;
+import android.util.SparseArray;
+
+/**
+ * Applies the error and counter overflow color filters to the background of an EditText. The
+ * last applied filter is remembered for each background, so that reapplying it does nothing,
+ * and filters are cached by color rather than being looked up on each change.
+ * <p>
+ * Before Lollipop AppCompat tints the background with a color filter too, overwriting ours
+ * behind our back, so there a filter is always reapplied.
+ */
+final class BackgroundTintController {
+
+    private static final PorterDuff.Mode MODE = PorterDuff.Mode.SRC_IN;
+    // Shared between every layout, as there are only ever a few error and overflow colors
+    private static final SparseArray<PorterDuffColorFilter> FILTERS = new SparseArray<>();
+
+    private Drawable appliedBackground;
+    private boolean hasAppliedFilter;
+    @ColorInt
+    private int appliedColor;
+
+    /**
+     * Returns whether {@link #applyColorFilter(Drawable, int)} would change anything.
+     */
+    boolean needsColorFilter(Drawable background, @ColorInt int color) {
+        return Build.VERSION.SDK_INT < 21 || background != appliedBackground
+                || !hasAppliedFilter || color != appliedColor;
+    }
+
+    /**
+     * Returns whether {@link #clearColorFilter(Drawable)} would change anything. Only our own
+     * filter needs clearing, so this holds even if AppCompat has since replaced it.
+     */
+    boolean needsClearColorFilter(Drawable background) {
+        return background != appliedBackground || hasAppliedFilter;
+    }
+
+    void applyColorFilter(Drawable background, @ColorInt int color) {
+        PorterDuffColorFilter filter = FILTERS.get(color);
+        if (filter == null) {
+            filter = new PorterDuffColorFilter(color, MODE);
+            FILTERS.put(color, filter);
+        }
+        background.setColorFilter(filter);
+        appliedBackground = background;
+        hasAppliedFilter = true;
+        appliedColor = color;
+    }
+
+    void clearColorFilter(Drawable background) {
+        DrawableCompat.clearColorFilter(background);
+        appliedBackground = background;
+        hasAppliedFilter = false;
+    }
+}
@@ -17,6 +17,8 @@ package org.buffer.android.buffertextinputlayout;
 
 import android.content.Context;
 import android.content.res.ColorStateList;
+import android.content.res.Configuration;
+import android.content.res.TypedArray;
 import android.graphics.Canvas;
 import android.graphics.Color;
 import android.graphics.Paint;
@@ -50,33 +52,45 @@ import android.support.v4.view.accessibility.AccessibilityNodeInfoCompat;
 import android.support.v4.widget.Space;
 import android.support.v4.widget.TextViewCompat;
 import android.support.v7.content.res.AppCompatResources;
-import android.support.v7.widget.AppCompatDrawableManager;
 import android.support.v7.widget.TintTypedArray;
 import android.text.Editable;
+import android.text.TextPaint;
 import android.text.TextUtils;
 import android.text.TextWatcher;
 import android.text.method.PasswordTransformationMethod;
 import android.util.AttributeSet;
 import android.util.Log;
+import android.util.TypedValue;
 import android.view.Gravity;
-import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import android.view.accessibility.AccessibilityEvent;
-import android.view.animation.AccelerateInterpolator;
 import android.widget.EditText;
 import android.widget.FrameLayout;
 import android.widget.LinearLayout;
 import android.widget.TextView;
 
 import org.buffer.android.buffertextinputlayout.animator.ValueAnimatorCompat;
+import org.buffer.android.buffertextinputlayout.counter.CodePointCounterStrategy;
+import org.buffer.android.buffertextinputlayout.counter.CountIndex;
+import org.buffer.android.buffertextinputlayout.counter.CounterFormatter;
+import org.buffer.android.buffertextinputlayout.counter.CounterStrategy;
+import org.buffer.android.buffertextinputlayout.counter.GraphemeCounterStrategy;
+import org.buffer.android.buffertextinputlayout.counter.IncrementalCounter;
+import org.buffer.android.buffertextinputlayout.counter.LengthCounterStrategy;
+import org.buffer.android.buffertextinputlayout.counter.WeightedCounterStrategy;
 import org.buffer.android.buffertextinputlayout.util.AnimationUtils;
 import org.buffer.android.buffertextinputlayout.util.CollapsingTextHelper;
 import org.buffer.android.buffertextinputlayout.util.DrawableUtils;
+import org.buffer.android.buffertextinputlayout.util.TextAppearanceCache;
 import org.buffer.android.buffertextinputlayout.util.ThemeUtils;
 import org.buffer.android.buffertextinputlayout.util.ViewGroupUtils;
 import org.buffer.android.buffertextinputlayout.util.ViewUtils;
 
+import java.io.Closeable;
+import java.util.Arrays;
+import java.util.concurrent.Executor;
+
 /**
  * A simple customisation of the {@link android.support.design.widget.TextInputLayout} from the
  * design support library.
@@ -96,15 +110,33 @@ import org.buffer.android.buffertextinputlayout.util.ViewUtils;
 public class BufferTextInputLayout extends LinearLayout {
 
     private static final int ANIMATION_DURATION = 200;
+
+    private static final int LABEL_STATE_HAS_TEXT = 1;
+    private static final int LABEL_STATE_FOCUSED = 1 << 1;
+    private static final int LABEL_STATE_ENABLED = 1 << 2;
+    private static final int LABEL_STATE_ERROR_SHOWN = 1 << 3;
+    private static final int LABEL_STATE_OVERFLOWED = 1 << 4;
+    // Forces the next label update, e.g. when the label colors have changed
+    private static final int LABEL_STATE_UNKNOWN = -1;
+
     private static final int INVALID_MAX_LENGTH = -1;
     private static final String LOG_TAG = "CountDownText";
+    private static final int COUNTER_STRATEGY_LENGTH = 0;
+    private static final int COUNTER_STRATEGY_CODE_POINTS = 1;
+    private static final int COUNTER_STRATEGY_GRAPHEMES = 2;
+    private static final int COUNTER_STRATEGY_TWITTER = 3;
+    private static final int[] TEXT_SIZE_ATTRS = {android.R.attr.textSize};
+    // Holds the EditText and password toggle, or null if we lay out our children ourselves
     private final FrameLayout inputFrame;
+    // The error and counter when we lay out our children ourselves, otherwise null
+    private final IndicatorRow flatIndicatorRow;
+    private int flatIndicatorHeight;
     EditText editText;
     private boolean isHintEnabled;
     private CharSequence hint;
     private Paint tempPaint;
     private final Rect tempRect = new Rect();
-    private LinearLayout indicatorArea;
+    private IndicatorLayout indicatorArea;
     private int indicatorsAdded;
     private boolean errorEnabled;
     TextView errorView;
@@ -113,10 +145,30 @@ public class BufferTextInputLayout extends LinearLayout {
     private CharSequence errorMessage;
     boolean counterEnabled;
     private TextView counterView;
+    private CounterStyle counterStyle = CounterStyle.TEXT;
+    private CounterRing counterRing;
+    private boolean counterRingShowsRemaining = true;
+    private ColorStateList counterRingWarningColor;
+    // Reserves the ring's space in the indicator area, so that the ring never changes the layout
+    private Space counterRingSpace;
     private int counterMaxLength;
     private int counterTextAppearance;
     private int counterOverflowTextAppearance;
+    private int counterAppliedTextAppearance;
     private boolean counterOverflowed;
+    private boolean counterLayoutStable;
+    // Formats the widest counter text when a stable counter's width is reserved
+    private CounterFormatter counterSampleFormatter;
+    // The reserved width of a stable counter's text, and what it was measured for
+    private int counterReservedWidth;
+    private int counterReservedMaxLength;
+    private CounterMode counterReservedMode;
+    private int counterReservedTextAppearance;
+    private int counterAppliedWidth;
+    // The height reserved for indicators which haven't been created yet, or -1 if not measured
+    private int indicatorReservedHeight = -1;
+    private TextPaint indicatorPaint;
+    private Paint.FontMetricsInt indicatorFontMetrics;
     private boolean passwordToggleEnabled;
     private Drawable passwordToggleDrawable;
     private CharSequence passwordToggleContentDesc;
@@ -132,16 +184,68 @@ public class BufferTextInputLayout extends LinearLayout {
     private ColorStateList focusedTextColor;
     // Only used for testing
     private boolean isHintExpanded;
+    // The inputs which decide the label's color and whether it's collapsed, as LABEL_STATE_ bits
+    private int labelState = LABEL_STATE_UNKNOWN;
+    // The counter text appearance which the label's overflow color was last taken from
+    private int labelCounterTextAppearance;
+    private boolean drawableStateFocused;
+    // The focused and enabled bits of the last drawable state which we acted on
+    private int appliedDrawableStateBits = LABEL_STATE_UNKNOWN;
     final CollapsingTextHelper collapsingTextHelper = new CollapsingTextHelper(this);
     private boolean hintAnimationEnabled;
     private ValueAnimatorCompat animator;
     private boolean hasReconstructedEditTextBackground;
+    private final BackgroundTintController backgroundTintController =
+            new BackgroundTintController();
     private boolean inDrawableStateChanged;
+    private int hintLayoutDirection = -1;
     private boolean counterVisible;
 
     private int charactersRemainingUntilCounterDisplay;
     private CounterMode counterMode;
     private TextInputListener textInputListener;
+    private TextEditListener textEditListener;
+    private int lastEditStart;
+    private int lastEditBefore;
+    private int lastEditCount;
+    private final TextChangeDispatcher textChangeDispatcher = new TextChangeDispatcher(this,
+            new TextChangeDispatcher.Callback() {
+                @Override
+                public void onDispatchTextChanged(int start, int before, int count) {
+                    deliverTextChanged(start, before, count);
+                }
+            });
+    private final TextValidationPipeline validationPipeline = new TextValidationPipeline(
+            new TextValidationPipeline.Callback() {
+                @Override
+                public void onValidated(CharSequence error) {
+                    final CharSequence current = getError();
+                    if (error != null) {
+                        if (!TextUtils.equals(error, current)) {
+                            setError(error);
+                        }
+                    } else if (validationError != null
+                            && TextUtils.equals(validationError, current)) {
+                        // Only clear the error if it's one we set, not one set by the app
+                        setError(null);
+                    }
+                    validationError = error;
+                }
+            });
+    // The error which the validators last set, or null
+    private CharSequence validationError;
+    private boolean validationInterrupted;
+    private int updateDepth;
+    private final IncrementalCounter textCounter =
+            new IncrementalCounter(new LengthCounterStrategy());
+    private final CounterFormatter counterFormatter;
+    private CounterProfile[] counterProfiles = new CounterProfile[0];
+    // The slot in textCounter of each profile's strategy
+    private int[] counterProfileSlots = new int[0];
+    // The profile currently shown by the counter, or -1 when we're showing our own count
+    private int activeCounterProfile = -1;
+    // Only created once something asks for an offset or a partial count
+    private CountIndex countIndex;
 
     public BufferTextInputLayout(Context context) {
         this(context, null);
@@ -152,18 +256,37 @@ public class BufferTextInputLayout extends LinearLayout {
     }
 
     public BufferTextInputLayout(Context context, AttributeSet attrs, int defStyleAttr) {
+        this(context, attrs, defStyleAttr, false);
+    }
+
+    /**
+     * @param flatLayout whether to measure and lay out the EditText, password toggle, error and
+     *                   counter directly, rather than in a frame and an indicator ViewGroup
+     */
+    BufferTextInputLayout(Context context, AttributeSet attrs, int defStyleAttr,
+            boolean flatLayout) {
         super(context, attrs, defStyleAttr);
         ThemeUtils.checkAppCompatTheme(context);
         setOrientation(VERTICAL);
         setWillNotDraw(false);
         setAddStatesFromChildren(true);
-        inputFrame = new FrameLayout(context);
-        inputFrame.setAddStatesFromChildren(true);
-        addView(inputFrame);
+        if (flatLayout) {
+            inputFrame = null;
+            flatIndicatorRow = new IndicatorRow();
+        } else {
+            inputFrame = new FrameLayout(context);
+            inputFrame.setAddStatesFromChildren(true);
+            flatIndicatorRow = null;
+            addView(inputFrame);
+        }
         collapsingTextHelper.setTextSizeInterpolator(AnimationUtils.FAST_OUT_SLOW_IN_INTERPOLATOR);
-        collapsingTextHelper.setPositionInterpolator(new AccelerateInterpolator());
+        collapsingTextHelper.setPositionInterpolator(AnimationUtils.ACCELERATE_INTERPOLATOR);
         collapsingTextHelper.setCollapsedTextGravity(Gravity.TOP | GravityCompat.START);
+        // We aren't shown until we're attached
+        collapsingTextHelper.setSuspended(true);
         isHintExpanded = collapsingTextHelper.getExpansionFraction() == 1f;
+        counterFormatter = new CounterFormatter(
+                context.getString(R.string.standard_character_counter_pattern));
         final TintTypedArray a = TintTypedArray.obtainStyledAttributes(context, attrs,
                 R.styleable.BufferTextInputLayout, defStyleAttr, R.style.BufferTextInputLayout);
         isHintEnabled = a.getBoolean(R.styleable.BufferTextInputLayout_hintEnabled, true);
@@ -196,15 +319,25 @@ public class BufferTextInputLayout extends LinearLayout {
 
         counterMode = CounterMode.fromId(
                 a.getInt(R.styleable.BufferTextInputLayout_counterMode, 2));
+        counterStyle = CounterStyle.fromId(
+                a.getInt(R.styleable.BufferTextInputLayout_counterStyle, 0));
+        counterLayoutStable = a.getBoolean(
+                R.styleable.BufferTextInputLayout_counterLayoutStable, false);
+        counterRingWarningColor = a.getColorStateList(
+                R.styleable.BufferTextInputLayout_counterRingWarningColor);
+        textCounter.setStrategy(createCounterStrategy(a.getInt(
+                R.styleable.BufferTextInputLayout_counterStrategy, COUNTER_STRATEGY_LENGTH)), null);
 
         charactersRemainingUntilCounterDisplay = a.getInt(
                 R.styleable.BufferTextInputLayout_displayFromCount, getCounterMaxLength());
 
         a.recycle();
         setErrorEnabled(errorEnabled);
-        setCounterEnabled(counterEnabled);
-        setCounterVisible(counterVisible &&
-                (charactersRemainingUntilCounterDisplay == getCounterMaxLength()));
+        // Only create the counter now if it's shown straight away
+        final boolean showCounter = counterVisible
+                && charactersRemainingUntilCounterDisplay == getCounterMaxLength();
+        setCounterEnabled(counterEnabled, showCounter);
+        setCounterVisible(showCounter);
         applyPasswordToggleTint();
         if (ViewCompat.getImportantForAccessibility(this)
                 == ViewCompat.IMPORTANT_FOR_ACCESSIBILITY_AUTO) {
@@ -217,7 +350,11 @@ public class BufferTextInputLayout extends LinearLayout {
 
     @Override
     public void addView(View child, int index, final ViewGroup.LayoutParams params) {
-        if (child instanceof EditText) {
+        if (child instanceof EditText && inputFrame == null) {
+            super.addView(child, index, params);
+            setEditText((EditText) child);
+            updateInputLayoutMargins();
+        } else if (child instanceof EditText) {
             inputFrame.addView(child, new FrameLayout.LayoutParams(params));
             // Now use the EditText's LayoutParams as our own and update them to make enough space
             // for the label
@@ -239,12 +376,120 @@ public class BufferTextInputLayout extends LinearLayout {
     }
 
     /**
-     * Set a listener for when text changes in the edit text
+     * Set a listener for when text changes in the edit text. Note that this listener receives a
+     * copy of the whole text on every change, consider using
+     * {@link #setTextEditListener(TextEditListener)} instead.
      */
     public void setTextInputListener(TextInputListener textInputListener) {
         this.textInputListener = textInputListener;
     }
 
+    /**
+     * Set a listener for each edit made to the text in the edit text. This receives the live text
+     * along with the edited range and the current count, without copying the text.
+     */
+    public void setTextEditListener(TextEditListener textEditListener) {
+        this.textEditListener = textEditListener;
+    }
+
+    /**
+     * Set when the text listeners are called. By default they are called synchronously for every
+     * edit, which means that any work they do happens on every key press. Deferred modes coalesce
+     * all of the edits made in between two calls in to one.
+     *
+     * @param mode           the dispatch mode to use
+     * @param intervalMillis the quiet period for {@link ListenerDispatchMode#DEBOUNCED}, or the
+     *                       minimum time between calls for {@link ListenerDispatchMode#THROTTLED}.
+     *                       Ignored by the other modes
+     */
+    public void setListenerDispatchMode(@NonNull ListenerDispatchMode mode, long intervalMillis) {
+        textChangeDispatcher.setMode(mode, intervalMillis);
+    }
+
+    /**
+     * Retrieve the mode currently used to call the text listeners
+     * @return ListenerDispatchMode the dispatch mode currently set
+     */
+    @NonNull
+    public ListenerDispatchMode getListenerDispatchMode() {
+        return textChangeDispatcher.getMode();
+    }
+
+    /**
+     * Add a validator to run whenever the text changes. Validators run in the order they were
+     * added on the validation executor, and the first error returned is displayed with
+     * {@link #setError(CharSequence)}. A validation is cancelled as soon as the text changes again,
+     * and validation follows the listener dispatch mode, so a debounced layout only validates
+     * once the user stops typing.
+     *
+     * @see #setValidationExecutor(Executor)
+     */
+    public void addTextValidator(@NonNull TextValidator validator) {
+        validationPipeline.addValidator(validator);
+    }
+
+    /**
+     * Remove a validator previously added with {@link #addTextValidator(TextValidator)}.
+     */
+    public void removeTextValidator(@NonNull TextValidator validator) {
+        validationPipeline.removeValidator(validator);
+    }
+
+    /**
+     * Set the executor that validators are run on, or null to use
+     * {@link android.os.AsyncTask#THREAD_POOL_EXECUTOR}.
+     */
+    public void setValidationExecutor(@Nullable Executor executor) {
+        validationPipeline.setExecutor(executor);
+    }
+
+    /**
+     * Validate the current text now, rather than waiting for it to change.
+     */
+    public void validateText() {
+        if (editText != null) {
+            validationPipeline.validate(editText.getText().toString());
+        }
+    }
+
+    /**
+     * Begin a batch of changes to the text, such as restoring a draft or replacing every mention.
+     * Until the matching {@link #endUpdate()}, the counter, label and background are not updated
+     * and listeners are not called; the edits are still counted. Calls may be nested.
+     *
+     * @return a handle which calls {@link #endUpdate()} when closed, so that the batch can be
+     * wrapped in a try-with-resources statement where the min SDK allows
+     */
+    @NonNull
+    public Update beginUpdate() {
+        if (updateDepth++ == 0) {
+            textChangeDispatcher.setSuspended(true);
+        }
+        return new Update();
+    }
+
+    /**
+     * End a batch of changes started with {@link #beginUpdate()}. Once the outermost batch ends,
+     * the counter, label and background are brought up to date in one go without animating, and
+     * listeners are called once for all of the edits made.
+     */
+    public void endUpdate() {
+        if (updateDepth == 0) {
+            throw new IllegalStateException("endUpdate() called without beginUpdate()");
+        }
+        if (--updateDepth == 0) {
+            updateDerivedTextState(false);
+            textChangeDispatcher.setSuspended(false);
+        }
+    }
+
+    /**
+     * Returns whether a batch of changes started with {@link #beginUpdate()} is in progress.
+     */
+    public boolean isInUpdate() {
+        return updateDepth > 0;
+    }
+
     /**
      * Manually set the counter length for the label
      */
@@ -257,8 +502,8 @@ public class BufferTextInputLayout extends LinearLayout {
      */
     public void setCharactersRemainingUntilCounterDisplay(int remainingCharacters) {
         charactersRemainingUntilCounterDisplay = remainingCharacters;
-        setCounterVisible(counterVisible && editText.getText().length() >=
-                (getCounterMaxLength() - charactersRemainingUntilCounterDisplay));
+        setCounterVisible(counterVisible && getDisplayedCount() >=
+                (getDisplayedMaxLength() - charactersRemainingUntilCounterDisplay));
     }
 
     /**
@@ -274,7 +519,9 @@ public class BufferTextInputLayout extends LinearLayout {
      */
     public void setCounterMode(CounterMode counterMode) {
         this.counterMode = counterMode;
-        setCounterText(editText.getText().length());
+        if (counterView != null) {
+            setCounterText(getDisplayedCount());
+        }
     }
 
     /**
@@ -285,6 +532,235 @@ public class BufferTextInputLayout extends LinearLayout {
         return counterMode;
     }
 
+    /**
+     * Set the strategy used to count the text for the counter, e.g. a
+     * {@link GraphemeCounterStrategy} so that an emoji counts as a single character, or a
+     * {@link WeightedCounterStrategy} to match a network's weighting of URLs and CJK text.
+     * Defaults to a {@link LengthCounterStrategy}, which counts UTF-16 units.
+     */
+    public void setCounterStrategy(@NonNull CounterStrategy counterStrategy) {
+        updateCounterStrategies(counterStrategy);
+    }
+
+    /**
+     * Retrieve the strategy currently used to count the text for the counter
+     * @return CounterStrategy the counter strategy currently set
+     */
+    @NonNull
+    public CounterStrategy getCounterStrategy() {
+        return textCounter.getStrategy();
+    }
+
+    /**
+     * Retrieve the current count of the text, as measured by the counter strategy. This is the
+     * value that the counter is based on, and is kept up to date as the user types.
+     * @return int the current count of the text
+     */
+    public int getTextCount() {
+        return textCounter.getCount();
+    }
+
+    /**
+     * Add a counter profile, replacing any existing profile with the same name. Once a layout has
+     * profiles, the counter shows whichever profile has the least remaining, and uses that
+     * profile's overflow appearance when it is over its limit. All profiles are counted in a
+     * single pass over each edit.
+     */
+    public void addCounterProfile(@NonNull CounterProfile profile) {
+        final int index = indexOfCounterProfile(profile.getName());
+        if (index != -1) {
+            counterProfiles = counterProfiles.clone();
+            counterProfiles[index] = profile;
+        } else {
+            counterProfiles = Arrays.copyOf(counterProfiles, counterProfiles.length + 1);
+            counterProfiles[counterProfiles.length - 1] = profile;
+        }
+        updateCounterStrategies(textCounter.getStrategy());
+    }
+
+    /**
+     * Remove the counter profile with the given name, if there is one.
+     */
+    public void removeCounterProfile(@NonNull String name) {
+        final int index = indexOfCounterProfile(name);
+        if (index != -1) {
+            final CounterProfile[] profiles = new CounterProfile[counterProfiles.length - 1];
+            System.arraycopy(counterProfiles, 0, profiles, 0, index);
+            System.arraycopy(counterProfiles, index + 1, profiles, index,
+                    profiles.length - index);
+            counterProfiles = profiles;
+            updateCounterStrategies(textCounter.getStrategy());
+        }
+    }
+
+    /**
+     * Retrieve the counter profile currently shown by the counter, which is the one with the
+     * least remaining
+     * @return CounterProfile the profile currently shown, or null if there are no profiles
+     */
+    @Nullable
+    public CounterProfile getActiveCounterProfile() {
+        return activeCounterProfile != -1 ? counterProfiles[activeCounterProfile] : null;
+    }
+
+    /**
+     * Retrieve the current count of the text for the counter profile with the given name
+     * @return int the current count of the text, as measured by the profile's strategy
+     */
+    public int getCounterProfileCount(@NonNull String name) {
+        return textCounter.getCount(counterProfileSlots[requireCounterProfile(name)]);
+    }
+
+    /**
+     * Returns whether the text is over the limit of the counter profile with the given name.
+     */
+    public boolean isCounterProfileOverflowed(@NonNull String name) {
+        final int index = requireCounterProfile(name);
+        return textCounter.getCount(counterProfileSlots[index])
+                > counterProfiles[index].getMaxLength();
+    }
+
+    /**
+     * Retrieve the offset in the text at which it goes over the limit of the counter, which is
+     * where the text should be truncated to fit. This uses the count shown by the counter, so
+     * that of the active counter profile if there is one. The first call builds an index of the
+     * text which is then kept up to date as it is edited, so later calls take O(log n) time.
+     * @return int the offset at which the text goes over the limit, or -1 if it doesn't
+     */
+    public int getCounterOverflowOffset() {
+        final int maxLength = getDisplayedMaxLength();
+        if (editText == null || maxLength == INVALID_MAX_LENGTH) {
+            return -1;
+        }
+        final Editable text = editText.getText();
+        final int offset = getCountIndex().getOffsetAtCount(text, maxLength);
+        return offset < text.length() ? offset : -1;
+    }
+
+    /**
+     * Retrieve the count of the text before the given offset, as measured by the strategy of the
+     * count shown by the counter. Like {@link #getCounterOverflowOffset()}, this takes O(log n)
+     * time once the index of the text has been built.
+     * @return int the count of the text before the offset
+     */
+    public int getCounterCountBefore(int offset) {
+        if (editText == null) {
+            return 0;
+        }
+        return getCountIndex().getCountBefore(editText.getText(), offset);
+    }
+
+    private CountIndex getCountIndex() {
+        final CounterStrategy strategy = activeCounterProfile != -1
+                ? counterProfiles[activeCounterProfile].getStrategy()
+                : textCounter.getStrategy();
+        final CharSequence text = editText != null ? editText.getText() : null;
+        if (countIndex == null) {
+            countIndex = new CountIndex(strategy);
+            countIndex.reset(text);
+        } else if (countIndex.getStrategy() != strategy) {
+            countIndex.setStrategy(strategy, text);
+        }
+        return countIndex;
+    }
+
+    private int indexOfCounterProfile(String name) {
+        for (int i = 0; i < counterProfiles.length; i++) {
+            if (counterProfiles[i].getName().equals(name)) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private int requireCounterProfile(String name) {
+        final int index = indexOfCounterProfile(name);
+        if (index == -1) {
+            throw new IllegalArgumentException("No counter profile named " + name);
+        }
+        return index;
+    }
+
+    private void updateCounterStrategies(CounterStrategy counterStrategy) {
+        // Profiles which share a strategy instance share a slot, so it is only counted once
+        final CounterStrategy[] strategies = new CounterStrategy[counterProfiles.length + 1];
+        strategies[0] = counterStrategy;
+        int size = 1;
+        final int[] slots = new int[counterProfiles.length];
+        for (int i = 0; i < counterProfiles.length; i++) {
+            final CounterStrategy strategy = counterProfiles[i].getStrategy();
+            int slot = 0;
+            while (slot < size && strategies[slot] != strategy) {
+                slot++;
+            }
+            if (slot == size) {
+                strategies[size++] = strategy;
+            }
+            slots[i] = slot;
+        }
+        counterProfileSlots = slots;
+        textCounter.setStrategies(Arrays.copyOf(strategies, size),
+                editText != null ? editText.getText() : null);
+        selectCounterProfile();
+        final int count = getDisplayedCount();
+        setCounterVisible(counterVisible && count >=
+                (getDisplayedMaxLength() - charactersRemainingUntilCounterDisplay));
+        if (counterEnabled) {
+            updateCounter(count);
+        }
+    }
+
+    private void selectCounterProfile() {
+        int active = -1;
+        int minRemaining = Integer.MAX_VALUE;
+        for (int i = 0; i < counterProfiles.length; i++) {
+            final int remaining = counterProfiles[i].getMaxLength()
+                    - textCounter.getCount(counterProfileSlots[i]);
+            if (remaining < minRemaining) {
+                minRemaining = remaining;
+                active = i;
+            }
+        }
+        activeCounterProfile = active;
+    }
+
+    private int getDisplayedCount() {
+        return activeCounterProfile != -1
+                ? textCounter.getCount(counterProfileSlots[activeCounterProfile])
+                : textCounter.getCount();
+    }
+
+    private int getDisplayedMaxLength() {
+        return activeCounterProfile != -1
+                ? counterProfiles[activeCounterProfile].getMaxLength()
+                : counterMaxLength;
+    }
+
+    private int getDisplayedOverflowTextAppearance() {
+        if (activeCounterProfile != -1) {
+            final CounterProfile profile = counterProfiles[activeCounterProfile];
+            if (profile.getOverflowTextAppearance() != 0) {
+                return profile.getOverflowTextAppearance();
+            }
+        }
+        return counterOverflowTextAppearance;
+    }
+
+    private static CounterStrategy createCounterStrategy(int id) {
+        switch (id) {
+            case COUNTER_STRATEGY_LENGTH:
+                return new LengthCounterStrategy();
+            case COUNTER_STRATEGY_CODE_POINTS:
+                return new CodePointCounterStrategy();
+            case COUNTER_STRATEGY_GRAPHEMES:
+                return new GraphemeCounterStrategy();
+            case COUNTER_STRATEGY_TWITTER:
+                return WeightedCounterStrategy.twitter();
+            default:
+                throw new IllegalArgumentException();
+        }
+    }
+
     /**
      * Set the typeface to use for both the expanded and floating hint.
      *
@@ -324,25 +800,36 @@ public class BufferTextInputLayout extends LinearLayout {
         collapsingTextHelper.setCollapsedTextGravity(
                 Gravity.TOP | (editTextGravity & GravityCompat.RELATIVE_HORIZONTAL_GRAVITY_MASK));
         collapsingTextHelper.setExpandedTextGravity(editTextGravity);
-        // Add a TextWatcher so that we know when the text input has changed
+        textCounter.reset(this.editText.getText());
+        if (countIndex != null) {
+            countIndex.reset(this.editText.getText());
+        }
+        // Add a TextWatcher so that we know when the text input has changed. The counter is kept
+        // up to date from the edit ranges so that we never need to recount the whole text
         this.editText.addTextChangedListener(new TextWatcher() {
             @Override
             public void afterTextChanged(Editable s) {
-                setCounterVisible(counterVisible && s.length() >=
-                        (getCounterMaxLength() - charactersRemainingUntilCounterDisplay));
-                updateLabelState(true);
-                if (counterEnabled) {
-                    updateCounter(s.length());
+                if (updateDepth == 0) {
+                    updateDerivedTextState(true);
                 }
-                if (textInputListener != null) textInputListener.onTextChanged(s.toString());
+                dispatchTextChanged();
             }
 
             @Override
             public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+                textCounter.beforeTextChanged(s, start, count, after);
             }
 
             @Override
             public void onTextChanged(CharSequence s, int start, int before, int count) {
+                textCounter.onTextChanged(s, start, before, count);
+                if (countIndex != null) {
+                    countIndex.onTextChanged(s, start, before, count);
+                }
+                lastEditStart = start;
+                lastEditBefore = before;
+                lastEditCount = count;
+                validationPipeline.onTextChanged();
             }
         });
         // Use the EditText's hint colors if we don't have one set
@@ -355,21 +842,58 @@ public class BufferTextInputLayout extends LinearLayout {
             // Clear the EditText's hint as we will display it ourselves
             this.editText.setHint(null);
         }
-        if (counterView != null) {
-            updateCounter(this.editText.getText().length());
+        selectCounterProfile();
+        if (counterEnabled) {
+            updateCounter(getDisplayedCount());
         }
         if (indicatorArea != null) {
             adjustIndicatorPadding();
         }
         updatePasswordToggleView();
         // Update the label visibility with no animation
+        invalidateLabelState();
         updateLabelState(false);
     }
 
+    private void updateDerivedTextState(boolean animate) {
+        selectCounterProfile();
+        final int count = getDisplayedCount();
+        setCounterVisible(counterVisible && count >=
+                (getDisplayedMaxLength() - charactersRemainingUntilCounterDisplay));
+        updateLabelState(animate);
+        if (counterEnabled) {
+            updateCounter(count);
+        }
+    }
+
+    private void dispatchTextChanged() {
+        if (textEditListener != null || textInputListener != null
+                || validationPipeline.hasValidators()) {
+            textChangeDispatcher.onTextChanged(lastEditStart, lastEditBefore, lastEditCount);
+        }
+    }
+
+    void deliverTextChanged(int start, int before, int count) {
+        if (editText == null) {
+            return;
+        }
+        final Editable s = editText.getText();
+        if (textEditListener != null) {
+            textEditListener.onTextEdited(s, start, before, count, getDisplayedCount());
+        }
+        // Only the legacy listener and validators need the text copied to a String
+        if (textInputListener != null || validationPipeline.hasValidators()) {
+            final String text = s.toString();
+            if (textInputListener != null) textInputListener.onTextChanged(text);
+            validationPipeline.validate(text);
+        }
+    }
+
     private void updateInputLayoutMargins() {
         // Create/update the LayoutParams so that we can add enough top margin
         // to the EditText so make room for the label
-        final LayoutParams lp = (LayoutParams) inputFrame.getLayoutParams();
+        final View input = inputFrame != null ? inputFrame : editText;
+        final LayoutParams lp = (LayoutParams) input.getLayoutParams();
         final int newTopMargin;
         if (isHintEnabled) {
             if (tempPaint == null) {
@@ -383,26 +907,60 @@ public class BufferTextInputLayout extends LinearLayout {
         }
         if (newTopMargin != lp.topMargin) {
             lp.topMargin = newTopMargin;
-            inputFrame.requestLayout();
+            input.requestLayout();
         }
     }
 
+    /**
+     * Makes the next call to {@link #updateLabelState(boolean)} update the label, even if none
+     * of its inputs have changed.
+     */
+    private void invalidateLabelState() {
+        labelState = LABEL_STATE_UNKNOWN;
+    }
+
     void updateLabelState(boolean animate) {
-        final boolean isEnabled = isEnabled();
-        final boolean hasText = editText != null && !TextUtils.isEmpty(editText.getText());
-        final boolean isFocused = arrayContains(getDrawableState(), android.R.attr.state_focused);
-        final boolean isErrorShowing = !TextUtils.isEmpty(getError());
+        if (labelState == LABEL_STATE_UNKNOWN) {
+            drawableStateFocused = arrayContains(getDrawableState(), android.R.attr.state_focused);
+        }
+        int state = 0;
+        if (editText != null && !TextUtils.isEmpty(editText.getText())) {
+            state |= LABEL_STATE_HAS_TEXT;
+        }
+        if (drawableStateFocused) {
+            state |= LABEL_STATE_FOCUSED;
+        }
+        if (isEnabled()) {
+            state |= LABEL_STATE_ENABLED;
+        }
+        if (!TextUtils.isEmpty(getError())) {
+            state |= LABEL_STATE_ERROR_SHOWN;
+        }
+        if (counterOverflowed) {
+            state |= LABEL_STATE_OVERFLOWED;
+        }
+        if (state == labelState && counterAppliedTextAppearance == labelCounterTextAppearance) {
+            // Nothing which affects the label has changed, e.g. we're typing in a non-empty field
+            return;
+        }
+        labelState = state;
+        labelCounterTextAppearance = counterAppliedTextAppearance;
+        final boolean isEnabled = (state & LABEL_STATE_ENABLED) != 0;
+        final boolean hasText = (state & LABEL_STATE_HAS_TEXT) != 0;
+        final boolean isFocused = (state & LABEL_STATE_FOCUSED) != 0;
+        final boolean isErrorShowing = (state & LABEL_STATE_ERROR_SHOWN) != 0;
         if (defaultTextColor != null) {
             collapsingTextHelper.setExpandedTextColor(defaultTextColor);
         }
-        if (isEnabled && counterOverflowed && counterView != null) {
-            collapsingTextHelper.setCollapsedTextColor(counterView.getTextColors());
+        final ColorStateList counterColors = getCounterTextColors();
+        if (isEnabled && counterOverflowed && counterColors != null) {
+            collapsingTextHelper.setCollapsedTextColor(counterColors);
         } else if (isEnabled && isFocused && focusedTextColor != null) {
             collapsingTextHelper.setCollapsedTextColor(focusedTextColor);
         } else if (defaultTextColor != null) {
             collapsingTextHelper.setCollapsedTextColor(defaultTextColor);
         }
-        if (hasText || (isEnabled() && (isFocused || isErrorShowing))) {
+        if (hasText || (isEnabled && (isFocused || isErrorShowing))) {
             // We should be showing the label so do so if it isn't already
             collapseHint(animate);
         } else {
@@ -507,28 +1065,50 @@ public class BufferTextInputLayout extends LinearLayout {
         collapsingTextHelper.setCollapsedTextAppearance(resId);
         focusedTextColor = collapsingTextHelper.getCollapsedTextColor();
         if (editText != null) {
+            invalidateLabelState();
             updateLabelState(false);
             // Text size might have changed so update the top margin
             updateInputLayoutMargins();
         }
     }
 
-    private void addIndicator(TextView indicator, int index) {
+    private void addIndicator(View indicator, boolean atEnd) {
+        if (flatIndicatorRow != null) {
+            addFlatIndicator(indicator, atEnd);
+            return;
+        }
         if (indicatorArea == null) {
-            indicatorArea = new LinearLayout(getContext());
-            indicatorArea.setOrientation(LinearLayout.HORIZONTAL);
+            indicatorArea = new IndicatorLayout(getContext());
             addView(indicatorArea, LinearLayout.LayoutParams.MATCH_PARENT,
                     LinearLayout.LayoutParams.WRAP_CONTENT);
-            // Add a flexible spacer in the middle so that the left/right views stay pinned
-            final Space spacer = new Space(getContext());
-            final LinearLayout.LayoutParams spacerLp = new LinearLayout.LayoutParams(0, 0, 1f);
-            indicatorArea.addView(spacer, spacerLp);
             if (editText != null) {
                 adjustIndicatorPadding();
             }
         }
         indicatorArea.setVisibility(View.VISIBLE);
-        indicatorArea.addView(indicator, index);
+        indicator.setLayoutParams(new ViewGroup.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
+        if (atEnd) {
+            indicatorArea.setEndView(indicator);
+        } else {
+            indicatorArea.setStartView(indicator);
+        }
+        indicatorsAdded++;
+    }
+
+    private void addFlatIndicator(View indicator, boolean atEnd) {
+        final View previous = atEnd ? flatIndicatorRow.getEndView()
+                : flatIndicatorRow.getStartView();
+        if (previous != null) {
+            removeView(previous);
+        }
+        if (atEnd) {
+            flatIndicatorRow.setEndView(indicator);
+        } else {
+            flatIndicatorRow.setStartView(indicator);
+        }
+        addView(indicator, new LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.WRAP_CONTENT));
         indicatorsAdded++;
     }
 
@@ -538,9 +1118,21 @@ public class BufferTextInputLayout extends LinearLayout {
                 0, ViewCompat.getPaddingEnd(editText), editText.getPaddingBottom());
     }
 
-    private void removeIndicator(TextView indicator) {
-        if (indicatorArea != null) {
-            indicatorArea.removeView(indicator);
+    private void removeIndicator(View indicator, boolean atEnd) {
+        if (flatIndicatorRow != null) {
+            if (atEnd) {
+                flatIndicatorRow.setEndView(null);
+            } else {
+                flatIndicatorRow.setStartView(null);
+            }
+            removeView(indicator);
+            indicatorsAdded--;
+        } else if (indicatorArea != null) {
+            if (atEnd) {
+                indicatorArea.setEndView(null);
+            } else {
+                indicatorArea.setStartView(null);
+            }
             if (--indicatorsAdded == 0) {
                 indicatorArea.setVisibility(View.GONE);
             }
@@ -560,44 +1152,52 @@ public class BufferTextInputLayout extends LinearLayout {
                 ViewCompat.animate(errorView).cancel();
             }
             if (enabled) {
-                errorView = new TextView(getContext());
-                boolean useDefaultColor = false;
-                try {
-                    TextViewCompat.setTextAppearance(errorView, errorTextAppearance);
-                    if (Build.VERSION.SDK_INT >= 23
-                            && errorView.getTextColors().getDefaultColor() == Color.MAGENTA) {
-                        // Caused by our theme not extending from Theme.Design*. On API 23 and
-                        // above, unresolved theme attrs result in MAGENTA rather than an exception.
-                        // Flag so that we use a decent default
-                        useDefaultColor = true;
-                    }
-                } catch (Exception e) {
-                    // Caused by our theme not extending from Theme.Design*. Flag so that we use
-                    // a decent default
-                    useDefaultColor = true;
-                }
-                if (useDefaultColor) {
-                    // Probably caused by our theme not extending from Theme.Design*. Instead
-                    // we manually set something appropriate
-                    TextViewCompat.setTextAppearance(errorView,
-                            android.support.v7.appcompat.R.style.TextAppearance_AppCompat_Caption);
-                    errorView.setTextColor(ContextCompat.getColor(
-                            getContext(), R.color.design_textinput_error_color_light));
-                }
-                errorView.setVisibility(INVISIBLE);
-                ViewCompat.setAccessibilityLiveRegion(errorView,
-                        ViewCompat.ACCESSIBILITY_LIVE_REGION_POLITE);
-                addIndicator(errorView, 0);
+                // The error view is created when an error is first shown, until then we just
+                // reserve its space
+                requestLayout();
             } else {
                 errorShown = false;
                 updateEditTextBackground();
-                removeIndicator(errorView);
-                errorView = null;
+                if (errorView != null) {
+                    removeIndicator(errorView, false);
+                    errorView = null;
+                }
             }
             errorEnabled = enabled;
         }
     }
 
+    private void createErrorView() {
+        errorView = new TextView(getContext());
+        boolean useDefaultColor = false;
+        try {
+            TextViewCompat.setTextAppearance(errorView, errorTextAppearance);
+            if (Build.VERSION.SDK_INT >= 23
+                    && errorView.getTextColors().getDefaultColor() == Color.MAGENTA) {
+                // Caused by our theme not extending from Theme.Design*. On API 23 and
+                // above, unresolved theme attrs result in MAGENTA rather than an exception.
+                // Flag so that we use a decent default
+                useDefaultColor = true;
+            }
+        } catch (Exception e) {
+            // Caused by our theme not extending from Theme.Design*. Flag so that we use
+            // a decent default
+            useDefaultColor = true;
+        }
+        if (useDefaultColor) {
+            // Probably caused by our theme not extending from Theme.Design*. Instead
+            // we manually set something appropriate
+            TextViewCompat.setTextAppearance(errorView,
+                    android.support.v7.appcompat.R.style.TextAppearance_AppCompat_Caption);
+            errorView.setTextColor(ContextCompat.getColor(
+                    getContext(), R.color.design_textinput_error_color_light));
+        }
+        errorView.setVisibility(INVISIBLE);
+        ViewCompat.setAccessibilityLiveRegion(errorView,
+                ViewCompat.ACCESSIBILITY_LIVE_REGION_POLITE);
+        addIndicator(errorView, false);
+    }
+
     /**
      * Returns whether the error functionality is enabled or not in this layout.
      *
@@ -635,6 +1235,15 @@ public class BufferTextInputLayout extends LinearLayout {
             setErrorEnabled(true);
         }
         errorShown = !TextUtils.isEmpty(error);
+        if (errorView == null) {
+            if (!errorShown) {
+                // There's no error view to hide, as no error has been shown yet
+                updateEditTextBackground();
+                updateLabelState(animate);
+                return;
+            }
+            createErrorView();
+        }
         // Cancel any on-going animation
         ViewCompat.animate(errorView).cancel();
         if (errorShown) {
@@ -689,40 +1298,175 @@ public class BufferTextInputLayout extends LinearLayout {
      * @attr ref android.support.design.R.styleable#TextInputLayout_counterEnabled
      */
     public void setCounterEnabled(boolean enabled) {
+        setCounterEnabled(enabled, true);
+    }
+
+    /**
+     * @param createView whether to create the counter's view now, rather than when it's first
+     *                   shown
+     */
+    private void setCounterEnabled(boolean enabled, boolean createView) {
         if (counterEnabled != enabled) {
+            if (enabled && counterStyle == CounterStyle.RING) {
+                counterRing = new CounterRing(this, counterFormatter);
+                counterRing.setTextAppearance(counterTextAppearance);
+                counterRing.setWarningColors(counterRingWarningColor);
+                counterAppliedTextAppearance = counterTextAppearance;
+                counterRingSpace = new Space(getContext());
+                counterRingSpace.setMinimumWidth(counterRing.getSize());
+                counterRingSpace.setMinimumHeight(counterRing.getSize());
+                addIndicator(counterRingSpace, true);
+                counterEnabled = true;
+                updateCounter(getDisplayedCount());
+                return;
+            }
+            if (enabled && !createView) {
+                counterEnabled = true;
+                // Reserves the counter's space if needed, and creates it if it's overflowed
+                updateCounter(getDisplayedCount());
+                requestLayout();
+                return;
+            }
             if (enabled) {
-                counterView = new TextView(getContext());
-                counterView.setMaxLines(1);
-                try {
-                    TextViewCompat.setTextAppearance(counterView, counterTextAppearance);
-                } catch (Exception e) {
-                    // Probably caused by our theme not extending from Theme.Design*. Instead
-                    // we manually set something appropriate
-                    TextViewCompat.setTextAppearance(counterView,
-                            android.support.v7.appcompat.R.style.TextAppearance_AppCompat_Caption);
-                    counterView.setTextColor(ContextCompat.getColor(
-                            getContext(), R.color.design_textinput_error_color_light));
-                }
-                addIndicator(counterView, -1);
-                if (editText == null) {
-                    updateCounter(0);
-                } else {
-                    updateCounter(editText.getText().length());
-                }
-            } else {
-                removeIndicator(counterView);
+                createCounterView();
+            } else if (counterRing != null) {
+                removeIndicator(counterRingSpace, true);
+                counterRingSpace = null;
+                counterRing = null;
+            } else if (counterView != null) {
+                removeIndicator(counterView, true);
                 counterView = null;
             }
             counterEnabled = enabled;
         }
     }
 
+    private void createCounterView() {
+        counterView = new TextView(getContext());
+        counterView.setMaxLines(1);
+        try {
+            TextViewCompat.setTextAppearance(counterView, counterTextAppearance);
+        } catch (Exception e) {
+            // Probably caused by our theme not extending from Theme.Design*. Instead
+            // we manually set something appropriate
+            TextViewCompat.setTextAppearance(counterView,
+                    android.support.v7.appcompat.R.style.TextAppearance_AppCompat_Caption);
+            counterView.setTextColor(ContextCompat.getColor(
+                    getContext(), R.color.design_textinput_error_color_light));
+        }
+        counterAppliedTextAppearance = counterTextAppearance;
+        counterReservedWidth = 0;
+        counterAppliedWidth = 0;
+        addIndicator(counterView, true);
+        updateCounter(getDisplayedCount());
+    }
+
     public void setCounterVisible(boolean visible) {
+        if (visible && counterView == null && counterEnabled
+                && counterStyle == CounterStyle.TEXT) {
+            createCounterView();
+        }
         if (counterView != null) {
-            counterView.setVisibility(visible ? VISIBLE : GONE);
+            // A stable counter keeps its space while hidden, so that showing it needs no layout
+            counterView.setVisibility(visible ? VISIBLE : counterLayoutStable ? INVISIBLE : GONE);
+        } else if (counterRing != null) {
+            // The ring keeps its space, so hiding it doesn't need a layout
+            counterRing.setVisible(visible);
+        }
+    }
+
+    /**
+     * Set whether the character counter keeps a fixed width, wide enough for any count up to the
+     * max length. Typing then only redraws the counter, rather than laying out this layout again
+     * whenever the number of digits changes, and the counter keeps its space while hidden.
+     */
+    public void setCounterLayoutStable(boolean stable) {
+        if (counterLayoutStable != stable) {
+            counterLayoutStable = stable;
+            if (counterView != null) {
+                if (stable) {
+                    counterReservedWidth = 0;
+                } else {
+                    releaseCounterWidth();
+                }
+                updateCounter(getDisplayedCount());
+                setCounterVisible(counterView.getVisibility() == VISIBLE);
+            }
+        }
+    }
+
+    /**
+     * Returns whether the character counter keeps a fixed width.
+     *
+     * @see #setCounterLayoutStable(boolean)
+     */
+    public boolean isCounterLayoutStable() {
+        return counterLayoutStable;
+    }
+
+    /**
+     * Set how the character counter is presented, as text or as a ring which is drawn by this
+     * layout and fills towards the max length.
+     */
+    public void setCounterStyle(@NonNull CounterStyle counterStyle) {
+        if (this.counterStyle != counterStyle) {
+            final boolean enabled = counterEnabled;
+            setCounterEnabled(false);
+            this.counterStyle = counterStyle;
+            if (enabled) {
+                setCounterEnabled(true);
+                setCounterVisible(counterVisible && getDisplayedCount() >=
+                        (getDisplayedMaxLength() - charactersRemainingUntilCounterDisplay));
+            }
+        }
+    }
+
+    /**
+     * Returns how the character counter is presented.
+     *
+     * @see #setCounterStyle(CounterStyle)
+     */
+    @NonNull
+    public CounterStyle getCounterStyle() {
+        return counterStyle;
+    }
+
+    /**
+     * Set whether the ring counter shows the number of characters remaining once the text is
+     * close to, or over, the max length.
+     *
+     * @see #setCounterStyle(CounterStyle)
+     */
+    public void setCounterRingShowsRemaining(boolean showRemaining) {
+        counterRingShowsRemaining = showRemaining;
+        if (counterRing != null) {
+            counterRing.setShowRemaining(showRemaining);
+            updateCounter(getDisplayedCount());
         }
     }
 
+    /**
+     * Set the color of the ring counter once the text is close to the max length, or null to
+     * use the default.
+     *
+     * @see #setCounterStyle(CounterStyle)
+     */
+    public void setCounterRingWarningColor(@Nullable ColorStateList color) {
+        counterRingWarningColor = color;
+        if (counterRing != null) {
+            counterRing.setWarningColors(color);
+        }
+    }
+
+    /**
+     * Returns the color of the ring counter once the text is close to the max length, or null
+     * if the default is used.
+     */
+    @Nullable
+    public ColorStateList getCounterRingWarningColor() {
+        return counterRingWarningColor;
+    }
+
     /**
      * Returns whether the character counter functionality is enabled or not in this layout.
      *
@@ -747,7 +1491,7 @@ public class BufferTextInputLayout extends LinearLayout {
                 counterMaxLength = INVALID_MAX_LENGTH;
             }
             if (counterEnabled) {
-                updateCounter(editText == null ? 0 : editText.getText().length());
+                updateCounter(getDisplayedCount());
             }
         }
     }
@@ -782,70 +1526,212 @@ public class BufferTextInputLayout extends LinearLayout {
 
     void updateCounter(int length) {
         boolean wasCounterOverflowed = counterOverflowed;
-        if (counterMaxLength == INVALID_MAX_LENGTH) {
-            counterView.setText(String.valueOf(length));
+        final int previousTextAppearance = counterAppliedTextAppearance;
+        final int maxLength = getDisplayedMaxLength();
+        if (counterRing != null) {
+            counterOverflowed = maxLength != INVALID_MAX_LENGTH && length > maxLength;
+            final int textAppearance = counterOverflowed
+                    ? getDisplayedOverflowTextAppearance() : counterTextAppearance;
+            if (textAppearance != counterAppliedTextAppearance) {
+                counterRing.setTextAppearance(textAppearance);
+                counterAppliedTextAppearance = textAppearance;
+            }
+            counterRing.setShowRemaining(counterRingShowsRemaining);
+            // Only invalidates the ring, never requests a layout
+            counterRing.setCount(length, maxLength);
+        } else if (counterView == null) {
+            final boolean overflowed = maxLength != INVALID_MAX_LENGTH && length > maxLength;
+            if (overflowed && counterEnabled) {
+                // The label and background take the overflow color from the counter, so create
+                // it, still hidden. Creating it updates the counter
+                createCounterView();
+                counterView.setVisibility(counterLayoutStable ? INVISIBLE : GONE);
+                return;
+            }
+            counterOverflowed = overflowed;
+        } else if (maxLength == INVALID_MAX_LENGTH) {
+            counterFormatter.format(length);
+            counterView.setText(counterFormatter.getText(), 0, counterFormatter.getLength());
             counterOverflowed = false;
         } else {
-            counterOverflowed = length > counterMaxLength;
-            if (wasCounterOverflowed != counterOverflowed) {
-                TextViewCompat.setTextAppearance(counterView, counterOverflowed ?
-                        counterOverflowTextAppearance : counterTextAppearance);
-            }
+            counterOverflowed = length > maxLength;
             setCounterText(length);
         }
-        if (editText != null && wasCounterOverflowed != counterOverflowed) {
+        // The overflow appearance can change without the overflow state flipping when the
+        // active counter profile changes
+        final int textAppearance = counterOverflowed
+                ? getDisplayedOverflowTextAppearance() : counterTextAppearance;
+        if (counterView != null && textAppearance != counterAppliedTextAppearance) {
+            final TextAppearanceCache.Appearance appearance =
+                    TextAppearanceCache.get(getContext(), textAppearance);
+            if (appearance == null || !appearance.applyTo(counterView)) {
+                TextViewCompat.setTextAppearance(counterView, textAppearance);
+            }
+            counterAppliedTextAppearance = textAppearance;
+        }
+        if (counterLayoutStable && counterView != null) {
+            updateCounterWidth(maxLength);
+        }
+        if (editText != null && (wasCounterOverflowed != counterOverflowed
+                || (counterOverflowed && previousTextAppearance != counterAppliedTextAppearance))) {
+            // The label and background take their color from the counter when it overflows
             updateLabelState(false);
             updateEditTextBackground();
         }
     }
 
     void setCounterText(int length) {
-        String text;
+        final int maxLength = getDisplayedMaxLength();
+        counterFormatter.setMaxLength(maxLength);
+        // Format in to a reused buffer so that typing doesn't allocate a new String per key
         switch (counterMode) {
             case DESCENDING:
-                text = String.valueOf(counterMaxLength - length);
+                counterFormatter.format(maxLength - length);
                 break;
             case ASCENDING:
-                text = String.valueOf(length);
+                counterFormatter.format(length);
                 break;
             default:
-                text = getContext().getString(R.string.standard_character_counter_pattern, length,
-                        counterMaxLength);
+                counterFormatter.formatWithMax(length);
                 break;
         }
-        counterView.setText(text);
+        counterView.setText(counterFormatter.getText(), 0, counterFormatter.getLength());
+    }
+
+    /**
+     * Fixes the width of the counter to fit the widest text it can show for {@code maxLength},
+     * so that setting its text only invalidates it. The width is only measured again when the
+     * max length, counter mode or text appearance change, or when an overflowing count outgrows
+     * it.
+     */
+    private void updateCounterWidth(int maxLength) {
+        final Paint paint = counterView.getPaint();
+        if (counterReservedWidth == 0 || counterReservedMaxLength != maxLength
+                || counterReservedMode != counterMode
+                || counterReservedTextAppearance != counterAppliedTextAppearance) {
+            if (Build.VERSION.SDK_INT >= 21) {
+                // Give every digit the same advance, so that the text doesn't jitter as it counts
+                counterView.setFontFeatureSettings("tnum");
+            }
+            counterReservedWidth = measureWidestCounterText(paint, maxLength);
+            counterReservedMaxLength = maxLength;
+            counterReservedMode = counterMode;
+            counterReservedTextAppearance = counterAppliedTextAppearance;
+        }
+        final int textWidth = (int) Math.ceil(paint.measureText(counterFormatter.getText(), 0,
+                counterFormatter.getLength()));
+        if (textWidth > counterReservedWidth) {
+            counterReservedWidth = textWidth;
+        }
+        final int width = counterReservedWidth + counterView.getCompoundPaddingLeft()
+                + counterView.getCompoundPaddingRight();
+        if (width != counterAppliedWidth) {
+            counterView.setGravity(Gravity.TOP | GravityCompat.END);
+            counterView.setWidth(width);
+            counterAppliedWidth = width;
+        }
+    }
+
+    private int measureWidestCounterText(Paint paint, int maxLength) {
+        if (counterSampleFormatter == null) {
+            counterSampleFormatter = new CounterFormatter(
+                    getContext().getString(R.string.standard_character_counter_pattern));
+        }
+        // A count with as many digits as the max length, all nines
+        int sample = 9;
+        for (int i = maxLength; i >= 10; i /= 10) {
+            sample = sample * 10 + 9;
+        }
+        final CounterFormatter formatter = counterSampleFormatter;
+        formatter.setMaxLength(maxLength);
+        if (maxLength == INVALID_MAX_LENGTH || counterMode == CounterMode.ASCENDING) {
+            formatter.format(sample);
+        } else if (counterMode == CounterMode.DESCENDING) {
+            // Overflowing counts are shown as negative numbers
+            formatter.format(-sample);
+        } else {
+            formatter.formatWithMax(sample);
+        }
+        final char[] text = Arrays.copyOf(formatter.getText(), formatter.getLength());
+        for (int i = 0; i < text.length; i++) {
+            final char c = text[i];
+            if (Character.isDigit(c)) {
+                text[i] = getWidestDigit(paint, (char) (c - Character.digit(c, 10)));
+            }
+        }
+        return (int) Math.ceil(paint.measureText(text, 0, text.length));
+    }
+
+    private static char getWidestDigit(Paint paint, char zero) {
+        final char[] digits = new char[10];
+        for (int i = 0; i < digits.length; i++) {
+            digits[i] = (char) (zero + i);
+        }
+        char widest = zero;
+        float widestWidth = 0f;
+        for (int i = 0; i < digits.length; i++) {
+            final float width = paint.measureText(digits, i, 1);
+            if (width > widestWidth) {
+                widest = digits[i];
+                widestWidth = width;
+            }
+        }
+        return widest;
+    }
+
+    private void releaseCounterWidth() {
+        if (Build.VERSION.SDK_INT >= 21) {
+            counterView.setFontFeatureSettings(null);
+        }
+        counterView.setGravity(Gravity.TOP | GravityCompat.START);
+        counterView.setMinWidth(0);
+        counterView.setMaxWidth(Integer.MAX_VALUE);
+        counterAppliedWidth = 0;
+        counterReservedWidth = 0;
     }
 
     private void updateEditTextBackground() {
         if (editText == null) {
             return;
         }
-        Drawable editTextBackground = editText.getBackground();
-        if (editTextBackground == null) {
+        if (editText.getBackground() == null) {
             return;
         }
         ensureBackgroundDrawableStateWorkaround();
+        // The workaround may have replaced the background
+        Drawable editTextBackground = editText.getBackground();
         if (android.support.v7.widget.DrawableUtils.canSafelyMutateDrawable(editTextBackground)) {
             editTextBackground = editTextBackground.mutate();
         }
-        if (errorShown && errorView != null) {
-            // Set a color filter of the error color
-            editTextBackground.setColorFilter(
-                    AppCompatDrawableManager.getPorterDuffColorFilter(
-                            errorView.getCurrentTextColor(), PorterDuff.Mode.SRC_IN));
-        } else if (counterOverflowed && counterView != null) {
-            // Set a color filter of the counter color
-            editTextBackground.setColorFilter(
-                    AppCompatDrawableManager.getPorterDuffColorFilter(
-                            counterView.getCurrentTextColor(), PorterDuff.Mode.SRC_IN));
-        } else {
+        final ColorStateList counterColors = getCounterTextColors();
+        final boolean showErrorColor = errorShown && errorView != null;
+        if (showErrorColor || (counterOverflowed && counterColors != null)) {
+            // Set a color filter of the error or counter color, unless it's already set
+            final int color = showErrorColor ? errorView.getCurrentTextColor()
+                    : counterColors.getColorForState(getDrawableState(),
+                            counterColors.getDefaultColor());
+            if (backgroundTintController.needsColorFilter(editTextBackground, color)) {
+                backgroundTintController.applyColorFilter(editTextBackground, color);
+            }
+        } else if (backgroundTintController.needsClearColorFilter(editTextBackground)) {
             // Else reset the color filter and refresh the drawable state so that the
             // normal tint is used
-            DrawableCompat.clearColorFilter(editTextBackground);
+            backgroundTintController.clearColorFilter(editTextBackground);
             editText.refreshDrawableState();
         }
     }
 
+    /**
+     * Returns the current colors of the counter, whether it's a TextView or a ring.
+     */
+    @Nullable
+    private ColorStateList getCounterTextColors() {
+        if (counterView != null) {
+            return counterView.getTextColors();
+        }
+        return counterRing != null ? counterRing.getColors() : null;
+    }
+
     private void ensureBackgroundDrawableStateWorkaround() {
         final int sdk = Build.VERSION.SDK_INT;
         if (sdk != 21 && sdk != 22) {
@@ -918,6 +1804,70 @@ public class BufferTextInputLayout extends LinearLayout {
                 });
     }
 
+    @Override
+    protected void onAttachedToWindow() {
+        super.onAttachedToWindow();
+        updateHintSuspended(true);
+        // Our display list may still draw hint bitmaps which we released when detached
+        collapsingTextHelper.invalidateReleasedTextures();
+        if (validationInterrupted) {
+            validationInterrupted = false;
+            validateText();
+        }
+    }
+
+    @Override
+    protected void onDetachedFromWindow() {
+        // Make sure that listeners see the final text rather than dropping a deferred edit
+        textChangeDispatcher.flush();
+        // There's no point validating while we're not shown, we'll pick it up again on attach
+        validationInterrupted |= validationPipeline.cancel();
+        // Let other layouts reuse our hint bitmaps while we're not shown
+        collapsingTextHelper.releaseTextures();
+        updateHintSuspended(false);
+        super.onDetachedFromWindow();
+    }
+
+    @Override
+    protected void onConfigurationChanged(Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        // Resolved sizes and colors may depend on the configuration, e.g. the font scale
+        TextAppearanceCache.onConfigurationChanged(newConfig);
+        indicatorReservedHeight = -1;
+    }
+
+    @Override
+    protected void onVisibilityChanged(@NonNull View changedView, int visibility) {
+        super.onVisibilityChanged(changedView, visibility);
+        // This can be called by View's constructor, before we're initialized
+        if (collapsingTextHelper != null) {
+            updateHintSuspended(ViewCompat.isAttachedToWindow(this));
+        }
+    }
+
+    @Override
+    protected void onWindowVisibilityChanged(int visibility) {
+        super.onWindowVisibilityChanged(visibility);
+        updateHintSuspended(ViewCompat.isAttachedToWindow(this));
+    }
+
+    /**
+     * Suspends the hint's animations and drawing while we aren't shown to the user, and resumes
+     * them, catching up with any changes, when we are.
+     */
+    private void updateHintSuspended(boolean attached) {
+        final boolean suspended = !attached || !isShown()
+                || getWindowVisibility() != VISIBLE;
+        if (suspended == collapsingTextHelper.isSuspended()) {
+            return;
+        }
+        if (suspended && animator != null && animator.isRunning()) {
+            // Nobody can see the animation, so jump to where it would have finished
+            animator.end();
+        }
+        collapsingTextHelper.setSuspended(suspended);
+    }
+
     @Override
     public Parcelable onSaveInstanceState() {
         Parcelable superState = super.onSaveInstanceState();
@@ -974,18 +1924,201 @@ public class BufferTextInputLayout extends LinearLayout {
         hintAnimationEnabled = enabled;
     }
 
+    /**
+     * Set whether the frames of the hint animation are sampled from a precomputed table, rather
+     * than being calculated on every frame. The table is only recomputed when the layout, hint
+     * appearance or state changes, so this suits fields whose hint is animated often.
+     *
+     * @see #isHintAnimationKeyframesEnabled()
+     */
+    public void setHintAnimationKeyframesEnabled(boolean enabled) {
+        collapsingTextHelper.setUseKeyframes(enabled);
+    }
+
+    /**
+     * Returns whether the frames of the hint animation are sampled from a precomputed table.
+     *
+     * @see #setHintAnimationKeyframesEnabled(boolean)
+     */
+    public boolean isHintAnimationKeyframesEnabled() {
+        return collapsingTextHelper.isUsingKeyframes();
+    }
+
+    /**
+     * Set whether the hint is rasterized once at its collapsed and expanded sizes, with the
+     * animation drawn by scaling those bitmaps rather than laying out the text on every frame.
+     * The bitmaps come from a pool which is shared by every layout, and are returned to it when
+     * the layout is detached.
+     *
+     * @see #isHintTextureRenderingEnabled()
+     */
+    public void setHintTextureRenderingEnabled(boolean enabled) {
+        collapsingTextHelper.setTextureRenderingEnabled(enabled);
+    }
+
+    /**
+     * Returns whether the hint is drawn from rasterized bitmaps.
+     *
+     * @see #setHintTextureRenderingEnabled(boolean)
+     */
+    public boolean isHintTextureRenderingEnabled() {
+        return collapsingTextHelper.isTextureRenderingEnabled();
+    }
+
     @Override
     public void draw(Canvas canvas) {
         super.draw(canvas);
         if (isHintEnabled) {
             collapsingTextHelper.draw(canvas);
         }
+        if (counterRing != null) {
+            counterRing.draw(canvas);
+        }
     }
 
     @Override
     protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
         updatePasswordToggleView();
-        super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        if (inputFrame != null) {
+            super.onMeasure(widthMeasureSpec, heightMeasureSpec);
+        } else {
+            measureFlat(widthMeasureSpec, heightMeasureSpec);
+        }
+        if (needsIndicatorSpaceReserved()) {
+            // Leave room at the bottom for the indicators we haven't created yet, so that we
+            // don't change size when they're first shown. The indicator area may already be
+            // showing, but be shorter than a line, e.g. if it only holds a hidden counter
+            final int areaHeight;
+            if (flatIndicatorRow != null) {
+                areaHeight = indicatorsAdded > 0 ? flatIndicatorHeight : 0;
+            } else {
+                areaHeight = indicatorArea != null && indicatorArea.getVisibility() != GONE
+                        ? indicatorArea.getMeasuredHeight() : 0;
+            }
+            final int reserved = getIndicatorReservedHeight() - areaHeight;
+            if (reserved > 0) {
+                setMeasuredDimension(ViewCompat.getMeasuredWidthAndState(this),
+                        ViewCompat.resolveSizeAndState(getMeasuredHeight() + reserved,
+                                heightMeasureSpec, ViewCompat.getMeasuredHeightAndState(this)));
+            }
+        }
+    }
+
+    /**
+     * Measures our children without the input frame and indicator area, stacking the EditText
+     * with the password toggle over its end, then the error and counter, then any other
+     * children in the order they were added.
+     */
+    private void measureFlat(int widthMeasureSpec, int heightMeasureSpec) {
+        final int horizontalPadding = getPaddingLeft() + getPaddingRight();
+        final int verticalPadding = getPaddingTop() + getPaddingBottom();
+        int usedHeight = 0;
+        int maxWidth = 0;
+        int childState = 0;
+        if (editText != null && editText.getVisibility() != GONE) {
+            final LayoutParams lp = (LayoutParams) editText.getLayoutParams();
+            measureChildWithMargins(editText, widthMeasureSpec, 0, heightMeasureSpec, 0);
+            int inputHeight = editText.getMeasuredHeight();
+            childState = ViewCompat.combineMeasuredStates(childState,
+                    ViewCompat.getMeasuredState(editText));
+            if (passwordToggleView != null && passwordToggleView.getVisibility() != GONE) {
+                // As in a FrameLayout, the toggle matches the EditText's height unless it's taller
+                final int toggleWidthSpec = getChildMeasureSpec(widthMeasureSpec,
+                        horizontalPadding + lp.leftMargin + lp.rightMargin,
+                        ViewGroup.LayoutParams.WRAP_CONTENT);
+                passwordToggleView.measure(toggleWidthSpec,
+                        MeasureSpec.makeMeasureSpec(0, MeasureSpec.UNSPECIFIED));
+                if (passwordToggleView.getMeasuredHeight() != inputHeight) {
+                    inputHeight = Math.max(inputHeight, passwordToggleView.getMeasuredHeight());
+                    passwordToggleView.measure(toggleWidthSpec,
+                            MeasureSpec.makeMeasureSpec(inputHeight, MeasureSpec.EXACTLY));
+                }
+            }
+            maxWidth = editText.getMeasuredWidth() + lp.leftMargin + lp.rightMargin;
+            usedHeight = inputHeight + lp.topMargin + lp.bottomMargin;
+        }
+        flatIndicatorHeight = 0;
+        if (indicatorsAdded > 0) {
+            // Pad the error and counter so that they match the EditText
+            final int rowHorizontalPadding = editText != null
+                    ? editText.getPaddingLeft() + editText.getPaddingRight() : 0;
+            final int rowBottomPadding = editText != null ? editText.getPaddingBottom() : 0;
+            childState = ViewCompat.combineMeasuredStates(childState,
+                    flatIndicatorRow.measure(widthMeasureSpec, heightMeasureSpec,
+                            horizontalPadding + rowHorizontalPadding,
+                            verticalPadding + usedHeight + rowBottomPadding));
+            maxWidth = Math.max(maxWidth, flatIndicatorRow.getWidth() + rowHorizontalPadding);
+            flatIndicatorHeight = flatIndicatorRow.getHeight() + rowBottomPadding;
+            usedHeight += flatIndicatorHeight;
+        }
+        for (int i = 0, count = getChildCount(); i < count; i++) {
+            final View child = getChildAt(i);
+            if (isFlatLayoutExtra(child)) {
+                final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+                measureChildWithMargins(child, widthMeasureSpec, 0, heightMeasureSpec,
+                        usedHeight);
+                maxWidth = Math.max(maxWidth,
+                        child.getMeasuredWidth() + lp.leftMargin + lp.rightMargin);
+                usedHeight += child.getMeasuredHeight() + lp.topMargin + lp.bottomMargin;
+                childState = ViewCompat.combineMeasuredStates(childState,
+                        ViewCompat.getMeasuredState(child));
+            }
+        }
+        setMeasuredDimension(
+                ViewCompat.resolveSizeAndState(Math.max(maxWidth + horizontalPadding,
+                        getSuggestedMinimumWidth()), widthMeasureSpec, childState),
+                ViewCompat.resolveSizeAndState(Math.max(usedHeight + verticalPadding,
+                        getSuggestedMinimumHeight()), heightMeasureSpec,
+                        childState << ViewCompat.MEASURED_HEIGHT_STATE_SHIFT));
+    }
+
+    /**
+     * Returns whether {@code child} is one added by the app, other than the EditText, which
+     * {@link #measureFlat(int, int)} stacks below the error and counter.
+     */
+    private boolean isFlatLayoutExtra(View child) {
+        return child.getVisibility() != GONE && child != editText && child != passwordToggleView
+                && !flatIndicatorRow.isIndicator(child);
+    }
+
+    private boolean needsIndicatorSpaceReserved() {
+        return (errorEnabled && errorView == null) || (counterEnabled && counterLayoutStable
+                && counterStyle == CounterStyle.TEXT && counterView == null);
+    }
+
+    /**
+     * Returns the height of a line of the error or counter, calculated from their text
+     * appearances rather than by creating their views.
+     */
+    private int getIndicatorReservedHeight() {
+        if (indicatorReservedHeight == -1) {
+            indicatorReservedHeight = Math.max(getTextAppearanceLineHeight(errorTextAppearance),
+                    getTextAppearanceLineHeight(counterTextAppearance));
+        }
+        return indicatorReservedHeight + (editText != null ? editText.getPaddingBottom() : 0);
+    }
+
+    private int getTextAppearanceLineHeight(@StyleRes int resId) {
+        float textSize = 0;
+        if (resId != 0) {
+            final TypedArray a = getContext().obtainStyledAttributes(resId, TEXT_SIZE_ATTRS);
+            textSize = a.getDimension(0, 0);
+            a.recycle();
+        }
+        if (textSize == 0) {
+            // The same fallback as the indicators themselves use
+            textSize = getResources().getDimension(
+                    android.support.v7.appcompat.R.dimen.abc_text_size_caption_material);
+        }
+        if (indicatorPaint == null) {
+            indicatorPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+            indicatorFontMetrics = new Paint.FontMetricsInt();
+        }
+        final TextPaint paint = indicatorPaint;
+        paint.setTextSize(textSize);
+        // TextViews include the font padding by default, so measure from top to bottom
+        paint.getFontMetricsInt(indicatorFontMetrics);
+        return indicatorFontMetrics.bottom - indicatorFontMetrics.top;
     }
 
     private void updatePasswordToggleView() {
@@ -995,11 +2128,14 @@ public class BufferTextInputLayout extends LinearLayout {
         }
         if (shouldShowPasswordIcon()) {
             if (passwordToggleView == null) {
-                passwordToggleView = (CheckableImageButton) LayoutInflater.from(getContext())
-                        .inflate(R.layout.design_text_input_password_icon, inputFrame, false);
+                passwordToggleView = createPasswordToggleView();
                 passwordToggleView.setImageDrawable(passwordToggleDrawable);
                 passwordToggleView.setContentDescription(passwordToggleContentDesc);
-                inputFrame.addView(passwordToggleView);
+                if (inputFrame != null) {
+                    inputFrame.addView(passwordToggleView);
+                } else {
+                    addView(passwordToggleView);
+                }
                 passwordToggleView.setOnClickListener(new View.OnClickListener() {
                     @Override
                     public void onClick(View view) {
@@ -1038,6 +2174,29 @@ public class BufferTextInputLayout extends LinearLayout {
         }
     }
 
+    /**
+     * Builds the same view as design_text_input_password_icon, without inflating it in the
+     * middle of a measure pass.
+     */
+    private CheckableImageButton createPasswordToggleView() {
+        final CheckableImageButton view = new CheckableImageButton(getContext());
+        view.setId(R.id.text_input_password_toggle);
+        final TypedValue value = new TypedValue();
+        if (getContext().getTheme().resolveAttribute(
+                android.support.v7.appcompat.R.attr.selectableItemBackgroundBorderless,
+                value, true)) {
+            view.setBackgroundResource(value.resourceId);
+        }
+        final int minSize = getResources().getDimensionPixelSize(
+                R.dimen.password_toggle_min_size);
+        view.setMinimumWidth(minSize);
+        view.setMinimumHeight(minSize);
+        view.setLayoutParams(new FrameLayout.LayoutParams(
+                ViewGroup.LayoutParams.WRAP_CONTENT, ViewGroup.LayoutParams.MATCH_PARENT,
+                Gravity.CENTER_VERTICAL | GravityCompat.END | Gravity.RIGHT));
+        return view;
+    }
+
     /**
      * Set the icon to use for the password visibility toggle button.
      * <p>
@@ -1233,7 +2392,16 @@ public class BufferTextInputLayout extends LinearLayout {
 
     @Override
     protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
-        super.onLayout(changed, left, top, right, bottom);
+        if (inputFrame != null) {
+            super.onLayout(changed, left, top, right, bottom);
+        } else {
+            layoutFlat(right - left);
+        }
+        if (counterRing != null) {
+            final Rect rect = tempRect;
+            ViewGroupUtils.getDescendantRect(this, counterRingSpace, rect);
+            counterRing.setPosition(rect.left, rect.top);
+        }
         if (isHintEnabled && editText != null) {
             final Rect rect = tempRect;
             ViewGroupUtils.getDescendantRect(this, editText, rect);
@@ -1246,7 +2414,79 @@ public class BufferTextInputLayout extends LinearLayout {
             // EditText's editable area
             collapsingTextHelper.setCollapsedBounds(l, getPaddingTop(),
                     r, bottom - top - getPaddingBottom());
-            collapsingTextHelper.recalculate();
+            // The bounds capture the EditText's position, its compound paddings, our padding and
+            // height, so if they and the layout direction are the same there's nothing to redo
+            final int layoutDirection = ViewCompat.getLayoutDirection(this);
+            if (layoutDirection != hintLayoutDirection
+                    || collapsingTextHelper.isRecalculationNeeded()) {
+                hintLayoutDirection = layoutDirection;
+                collapsingTextHelper.recalculate();
+            }
+        }
+    }
+
+    private void layoutFlat(int width) {
+        final int layoutDirection = ViewCompat.getLayoutDirection(this);
+        final boolean isRtl = layoutDirection == ViewCompat.LAYOUT_DIRECTION_RTL;
+        final int parentLeft = getPaddingLeft();
+        final int parentRight = width - getPaddingRight();
+        int childTop = getPaddingTop();
+        if (editText != null && editText.getVisibility() != GONE) {
+            final LayoutParams lp = (LayoutParams) editText.getLayoutParams();
+            final int inputTop = childTop + lp.topMargin;
+            final int inputLeft = getFlatChildLeft(editText, parentLeft, parentRight,
+                    layoutDirection);
+            final int inputRight = inputLeft + editText.getMeasuredWidth();
+            editText.layout(inputLeft, inputTop, inputRight,
+                    inputTop + editText.getMeasuredHeight());
+            int inputHeight = editText.getMeasuredHeight();
+            if (passwordToggleView != null && passwordToggleView.getVisibility() != GONE) {
+                final int toggleWidth = passwordToggleView.getMeasuredWidth();
+                final int toggleLeft = isRtl ? inputLeft : inputRight - toggleWidth;
+                passwordToggleView.layout(toggleLeft, inputTop, toggleLeft + toggleWidth,
+                        inputTop + passwordToggleView.getMeasuredHeight());
+                inputHeight = Math.max(inputHeight, passwordToggleView.getMeasuredHeight());
+            }
+            childTop = inputTop + inputHeight + lp.bottomMargin;
+        }
+        if (indicatorsAdded > 0) {
+            final int rowLeft = parentLeft + (editText != null ? editText.getPaddingLeft() : 0);
+            final int rowRight = parentRight
+                    - (editText != null ? editText.getPaddingRight() : 0);
+            flatIndicatorRow.layout(rowLeft, childTop, rowRight, isRtl);
+            childTop += flatIndicatorHeight;
+        }
+        for (int i = 0, count = getChildCount(); i < count; i++) {
+            final View child = getChildAt(i);
+            if (isFlatLayoutExtra(child)) {
+                final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+                final int childLeft = getFlatChildLeft(child, parentLeft, parentRight,
+                        layoutDirection);
+                childTop += lp.topMargin;
+                child.layout(childLeft, childTop, childLeft + child.getMeasuredWidth(),
+                        childTop + child.getMeasuredHeight());
+                childTop += child.getMeasuredHeight() + lp.bottomMargin;
+            }
+        }
+    }
+
+    /**
+     * Returns the left of {@code child} from its layout gravity, as a vertical LinearLayout
+     * would place it.
+     */
+    private static int getFlatChildLeft(View child, int parentLeft, int parentRight,
+            int layoutDirection) {
+        final LayoutParams lp = (LayoutParams) child.getLayoutParams();
+        final int gravity = GravityCompat.getAbsoluteGravity(
+                lp.gravity < 0 ? GravityCompat.START : lp.gravity, layoutDirection);
+        switch (gravity & Gravity.HORIZONTAL_GRAVITY_MASK) {
+            case Gravity.CENTER_HORIZONTAL:
+                return parentLeft + (parentRight - parentLeft - child.getMeasuredWidth()) / 2
+                        + lp.leftMargin - lp.rightMargin;
+            case Gravity.RIGHT:
+                return parentRight - child.getMeasuredWidth() - lp.rightMargin;
+            default:
+                return parentLeft + lp.leftMargin;
         }
     }
 
@@ -1254,7 +2494,7 @@ public class BufferTextInputLayout extends LinearLayout {
         if (animator != null && animator.isRunning()) {
             animator.cancel();
         }
-        if (animate && hintAnimationEnabled) {
+        if (animate && hintAnimationEnabled && !collapsingTextHelper.isSuspended()) {
             animateToExpansionFraction(1f);
         } else {
             collapsingTextHelper.setExpansionFraction(1f);
@@ -1274,10 +2514,26 @@ public class BufferTextInputLayout extends LinearLayout {
         super.drawableStateChanged();
         final int[] state = getDrawableState();
         boolean changed = false;
-        // Drawable state has changed so see if we need to update the label
-        updateLabelState(ViewCompat.isLaidOut(this) && isEnabled());
-        updateEditTextBackground();
+        // As we add states from our children, most changes are the EditText being pressed,
+        // selected and so on. Only focused and enabled affect the label and background.
+        final int stateBits = getConsumedDrawableStateBits(state);
+        if (stateBits != appliedDrawableStateBits) {
+            appliedDrawableStateBits = stateBits;
+            drawableStateFocused = (stateBits & LABEL_STATE_FOCUSED) != 0;
+            // Drawable state has changed so see if we need to update the label
+            updateLabelState(ViewCompat.isLaidOut(this) && isEnabled());
+            updateEditTextBackground();
+        } else if (Build.VERSION.SDK_INT < 21) {
+            // Before Lollipop AppCompat reapplies its tint as a color filter on any state
+            // change, wiping out our error or overflow color, so put it back
+            updateEditTextBackground();
+        }
+        if (counterRing != null) {
+            // Only invalidates the ring, if its color is different in the new state
+            counterRing.onDrawableStateChanged();
+        }
         if (collapsingTextHelper != null) {
+            // This only recalculates if the hint colors are different in the new state
             changed |= collapsingTextHelper.setState(state);
         }
         if (changed) {
@@ -1290,7 +2546,7 @@ public class BufferTextInputLayout extends LinearLayout {
         if (animator != null && animator.isRunning()) {
             animator.cancel();
         }
-        if (animate && hintAnimationEnabled) {
+        if (animate && hintAnimationEnabled && !collapsingTextHelper.isSuspended()) {
             animateToExpansionFraction(0f);
         } else {
             collapsingTextHelper.setExpansionFraction(0f);
@@ -1322,6 +2578,25 @@ public class BufferTextInputLayout extends LinearLayout {
         return isHintExpanded;
     }
 
+    /**
+     * A handle to a batch of changes started with {@link #beginUpdate()}. Closing it ends the
+     * batch; closing it again has no effect.
+     */
+    public final class Update implements Closeable {
+        private boolean closed;
+
+        Update() {
+        }
+
+        @Override
+        public void close() {
+            if (!closed) {
+                closed = true;
+                endUpdate();
+            }
+        }
+    }
+
     private class TextInputAccessibilityDelegate extends AccessibilityDelegateCompat {
         TextInputAccessibilityDelegate() {
         }
@@ -1360,6 +2635,18 @@ public class BufferTextInputLayout extends LinearLayout {
         }
     }
 
+    private static int getConsumedDrawableStateBits(int[] state) {
+        int bits = 0;
+        for (int value : state) {
+            if (value == android.R.attr.state_focused) {
+                bits |= LABEL_STATE_FOCUSED;
+            } else if (value == android.R.attr.state_enabled) {
+                bits |= LABEL_STATE_ENABLED;
+            }
+        }
+        return bits;
+    }
+
     private static boolean arrayContains(int[] array, int value) {
         for (int v : array) {
             if (v == value) {
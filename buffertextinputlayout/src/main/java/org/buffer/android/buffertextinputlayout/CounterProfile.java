@@ -0,0 +1,66 @@
+package org.buffer.android.buffertextinputlayout;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.StyleRes;
+
+import org.buffer.android.buffertextinputlayout.counter.CounterStrategy;
+
+/**
+ * A named counter limit, such as the limit of one network when composing a post for several at
+ * once. Each profile counts the text with its own strategy against its own max length. All of
+ * the profiles of a {@link BufferTextInputLayout} are updated together in a single pass over
+ * each edit.
+ *
+ * @see BufferTextInputLayout#addCounterProfile(CounterProfile)
+ */
+public final class CounterProfile {
+
+    private final String name;
+    private final CounterStrategy strategy;
+    private final int maxLength;
+    private final int overflowTextAppearance;
+
+    /**
+     * Creates a profile which uses the layout's counter overflow text appearance.
+     */
+    public CounterProfile(@NonNull String name, @NonNull CounterStrategy strategy, int maxLength) {
+        this(name, strategy, maxLength, 0);
+    }
+
+    /**
+     * @param name                   the name the profile is referred to by
+     * @param strategy               the strategy used to count the text for this profile
+     * @param maxLength              the max length for this profile, which must be positive
+     * @param overflowTextAppearance the appearance of the counter when this profile overflows,
+     *                               or 0 to use the layout's counter overflow text appearance
+     */
+    public CounterProfile(@NonNull String name, @NonNull CounterStrategy strategy, int maxLength,
+                          @StyleRes int overflowTextAppearance) {
+        if (maxLength <= 0) {
+            throw new IllegalArgumentException("Invalid max length " + maxLength);
+        }
+        this.name = name;
+        this.strategy = strategy;
+        this.maxLength = maxLength;
+        this.overflowTextAppearance = overflowTextAppearance;
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    @NonNull
+    public CounterStrategy getStrategy() {
+        return strategy;
+    }
+
+    public int getMaxLength() {
+        return maxLength;
+    }
+
+    @StyleRes
+    public int getOverflowTextAppearance() {
+        return overflowTextAppearance;
+    }
+}
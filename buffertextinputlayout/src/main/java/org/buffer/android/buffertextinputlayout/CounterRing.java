@@ -0,0 +1,217 @@
+package org.buffer.android.buffertextinputlayout;
+
+import android.content.res.ColorStateList;
+import android.content.res.Resources;
+import android.graphics.Canvas;
+import android.graphics.Color;
+import android.graphics.Paint;
+import android.graphics.Rect;
+import android.graphics.RectF;
+import android.support.annotation.ColorInt;
+import android.support.annotation.Nullable;
+import android.support.annotation.StyleRes;
+import android.support.v4.content.ContextCompat;
+import android.text.TextPaint;
+import android.view.View;
+
+import org.buffer.android.buffertextinputlayout.counter.CounterFormatter;
+import org.buffer.android.buffertextinputlayout.util.TextAppearanceCache;
+
+/**
+ * Draws the character counter of a {@link BufferTextInputLayout} as a ring which fills towards
+ * the max length. Once the text is close to the max length the ring changes to a warning color,
+ * and optionally shows the number of characters remaining, and once it's over it changes to the
+ * overflow color. Only the ring's own bounds are invalidated when it changes.
+ */
+final class CounterRing {
+
+    private static final float START_ANGLE = -90f;
+    // The ring warns when this many characters remain, or a tenth of the max length if less
+    private static final int MAX_WARNING_REMAINING = 20;
+    // The size of the remaining count, relative to the size of the ring
+    private static final float TEXT_SIZE_RATIO = 0.45f;
+
+    private final View view;
+    private final CounterFormatter formatter;
+    private final int size;
+    private final Paint trackPaint;
+    private final Paint progressPaint;
+    private final TextPaint textPaint;
+    private final Rect bounds = new Rect();
+    private final RectF oval = new RectF();
+    private ColorStateList warningColors;
+    private ColorStateList colors;
+    private boolean visible = true;
+    private boolean showRemaining = true;
+
+    // What's currently drawn
+    private float sweepAngle;
+    @ColorInt
+    private int color;
+    private boolean drawRemaining;
+    private int remaining;
+    private final float textBaselineOffset;
+    // What was last counted, so that the ring can be updated for a new drawable state
+    private int count;
+    private int maxLength;
+
+    CounterRing(View view, CounterFormatter formatter) {
+        this.view = view;
+        this.formatter = formatter;
+        final Resources res = view.getResources();
+        size = res.getDimensionPixelSize(R.dimen.counter_ring_size);
+        final float strokeWidth = res.getDimension(R.dimen.counter_ring_stroke_width);
+        trackPaint = new Paint(Paint.ANTI_ALIAS_FLAG);
+        trackPaint.setStyle(Paint.Style.STROKE);
+        trackPaint.setStrokeWidth(strokeWidth);
+        progressPaint = new Paint(trackPaint);
+        progressPaint.setStrokeCap(Paint.Cap.ROUND);
+        textPaint = new TextPaint(Paint.ANTI_ALIAS_FLAG);
+        textPaint.setTextAlign(Paint.Align.CENTER);
+        textPaint.setTextSize(size * TEXT_SIZE_RATIO);
+        final Paint.FontMetrics metrics = textPaint.getFontMetrics();
+        textBaselineOffset = -(metrics.ascent + metrics.descent) / 2f;
+        warningColors = ContextCompat.getColorStateList(view.getContext(),
+                R.color.counter_ring_warning_color);
+        color = Color.GRAY;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    void setPosition(int left, int top) {
+        if (bounds.left != left || bounds.top != top) {
+            invalidate();
+            bounds.set(left, top, left + size, top + size);
+            final float inset = progressPaint.getStrokeWidth() / 2f;
+            oval.set(bounds);
+            oval.inset(inset, inset);
+            invalidate();
+        }
+    }
+
+    /**
+     * Takes the color of the ring from a TextAppearance, as used by the text counter.
+     */
+    void setTextAppearance(@StyleRes int resId) {
+        final TextAppearanceCache.Appearance appearance =
+                TextAppearanceCache.get(view.getContext(), resId);
+        colors = appearance != null ? appearance.getTextColor() : null;
+    }
+
+    /**
+     * Sets the colors used once the text is close to the max length, or null for the default.
+     */
+    void setWarningColors(@Nullable ColorStateList warningColors) {
+        this.warningColors = warningColors != null ? warningColors
+                : ContextCompat.getColorStateList(view.getContext(),
+                        R.color.counter_ring_warning_color);
+        update();
+    }
+
+    /**
+     * Returns the colors of the TextAppearance last set, or null if it didn't have any.
+     */
+    ColorStateList getColors() {
+        return colors;
+    }
+
+    void setVisible(boolean visible) {
+        if (this.visible != visible) {
+            this.visible = visible;
+            invalidate();
+        }
+    }
+
+    void setShowRemaining(boolean showRemaining) {
+        if (this.showRemaining != showRemaining) {
+            this.showRemaining = showRemaining;
+            invalidate();
+        }
+    }
+
+    boolean isShowingRemaining() {
+        return showRemaining;
+    }
+
+    /**
+     * Updates the ring for {@code count} out of {@code maxLength}, which is ignored if it's not
+     * positive. Nothing is invalidated unless what's drawn changes.
+     */
+    void setCount(int count, int maxLength) {
+        this.count = count;
+        this.maxLength = maxLength;
+        update();
+    }
+
+    /**
+     * Updates the ring's color for the view's current drawable state.
+     */
+    void onDrawableStateChanged() {
+        update();
+    }
+
+    private void update() {
+        final int count = this.count;
+        final int maxLength = this.maxLength;
+        final int[] state = view.getDrawableState();
+        final float sweepAngle;
+        final int remaining = maxLength - count;
+        final int warningRemaining = Math.min(MAX_WARNING_REMAINING, maxLength / 10);
+        final boolean drawRemaining;
+        int color = colors != null
+                ? colors.getColorForState(state, colors.getDefaultColor())
+                : Color.GRAY;
+        if (maxLength <= 0) {
+            sweepAngle = 0f;
+            drawRemaining = false;
+        } else if (remaining < 0) {
+            // We're using the overflow appearance's color
+            sweepAngle = 360f;
+            drawRemaining = showRemaining;
+        } else {
+            sweepAngle = 360f * count / maxLength;
+            drawRemaining = showRemaining && remaining <= warningRemaining;
+            if (remaining <= warningRemaining) {
+                color = warningColors.getColorForState(state, warningColors.getDefaultColor());
+            }
+        }
+        if (sweepAngle != this.sweepAngle || color != this.color
+                || drawRemaining != this.drawRemaining
+                || (drawRemaining && remaining != this.remaining)) {
+            this.sweepAngle = sweepAngle;
+            this.color = color;
+            this.drawRemaining = drawRemaining;
+            this.remaining = remaining;
+            invalidate();
+        }
+    }
+
+    void draw(Canvas canvas) {
+        if (!visible || bounds.isEmpty()) {
+            return;
+        }
+        trackPaint.setColor(color);
+        // The track is a faint version of the progress color
+        trackPaint.setAlpha(Color.alpha(color) / 4);
+        canvas.drawOval(oval, trackPaint);
+        if (sweepAngle > 0f) {
+            progressPaint.setColor(color);
+            canvas.drawArc(oval, START_ANGLE, sweepAngle, false, progressPaint);
+        }
+        if (drawRemaining) {
+            // Formatted in to a reused buffer, so drawing doesn't allocate
+            formatter.format(remaining);
+            textPaint.setColor(color);
+            canvas.drawText(formatter.getText(), 0, formatter.getLength(), oval.centerX(),
+                    oval.centerY() + textBaselineOffset, textPaint);
+        }
+    }
+
+    private void invalidate() {
+        if (!bounds.isEmpty()) {
+            view.invalidate(bounds.left, bounds.top, bounds.right, bounds.bottom);
+        }
+    }
+}
@@ -0,0 +1,30 @@
+package org.buffer.android.buffertextinputlayout;
+
+/**
+ * How the character counter of a {@link BufferTextInputLayout} is presented.
+ */
+public enum CounterStyle {
+    /**
+     * The count is shown as text, formatted according to the {@link CounterMode}.
+     */
+    TEXT(0),
+    /**
+     * The count is shown as a ring which fills towards the max length, changing color as the
+     * limit gets close and when it's passed. The ring is drawn by the layout itself, so typing
+     * never causes a layout pass.
+     */
+    RING(1);
+
+    int id;
+
+    CounterStyle(int id) {
+        this.id = id;
+    }
+
+    static CounterStyle fromId(int id) {
+        for (CounterStyle counterStyle : values()) {
+            if (counterStyle.id == id) return counterStyle;
+        }
+        throw new IllegalArgumentException();
+    }
+}
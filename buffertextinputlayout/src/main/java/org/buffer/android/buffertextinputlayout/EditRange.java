@@ -0,0 +1,44 @@
+package org.buffer.android.buffertextinputlayout;
+
+/**
+ * A range of text replaced by one or more edits, in the {@code start}, {@code before},
+ * {@code count} form of {@link android.text.TextWatcher#onTextChanged}. Merging a later edit
+ * gives the range those edits would have had if they had been made as one.
+ */
+final class EditRange {
+
+    // The range as its start, its end in the text before the first edit, and its end in the
+    // current text
+    private int start;
+    private int oldEnd;
+    private int newEnd;
+
+    void set(int start, int before, int count) {
+        this.start = start;
+        oldEnd = start + before;
+        newEnd = start + count;
+    }
+
+    /**
+     * Merges an edit made to the text after this range was applied.
+     */
+    void merge(int start, int before, int count) {
+        // The merged range must cover both edits in the current text
+        final int end = Math.max(newEnd, start + before);
+        oldEnd = end - (newEnd - oldEnd);
+        newEnd = end + count - before;
+        this.start = Math.min(this.start, start);
+    }
+
+    int getStart() {
+        return start;
+    }
+
+    int getBefore() {
+        return oldEnd - start;
+    }
+
+    int getCount() {
+        return newEnd - start;
+    }
+}
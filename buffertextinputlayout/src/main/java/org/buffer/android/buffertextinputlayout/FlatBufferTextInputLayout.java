@@ -0,0 +1,29 @@
+package org.buffer.android.buffertextinputlayout;
+
+import android.content.Context;
+import android.util.AttributeSet;
+
+/**
+ * A {@link BufferTextInputLayout} which measures and lays out its EditText, password toggle,
+ * error and counter directly in its own onMeasure and onLayout. There's no input FrameLayout
+ * or indicator ViewGroup, so each field has two fewer ViewGroups to measure, lay out and draw,
+ * which adds up on screens with hundreds of fields.
+ * <p>
+ * It takes the same attributes and is used in the same way, except that the layout params of
+ * any children other than the EditText are interpreted as by a vertical LinearLayout without
+ * weights, and those children are always placed below the error and counter.
+ */
+public class FlatBufferTextInputLayout extends BufferTextInputLayout {
+
+    public FlatBufferTextInputLayout(Context context) {
+        this(context, null);
+    }
+
+    public FlatBufferTextInputLayout(Context context, AttributeSet attrs) {
+        this(context, attrs, 0);
+    }
+
+    public FlatBufferTextInputLayout(Context context, AttributeSet attrs, int defStyleAttr) {
+        super(context, attrs, defStyleAttr, true);
+    }
+}
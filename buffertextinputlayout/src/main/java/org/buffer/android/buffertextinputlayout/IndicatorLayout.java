@@ -0,0 +1,71 @@
+package org.buffer.android.buffertextinputlayout;
+
+import android.content.Context;
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Lays out the error and counter of a {@link BufferTextInputLayout} in a single pass, as an
+ * {@link IndicatorRow}. This replaces a horizontal LinearLayout with a weighted spacer;
+ * {@link FlatBufferTextInputLayout} does without this ViewGroup altogether.
+ */
+final class IndicatorLayout extends ViewGroup {
+
+    private final IndicatorRow row = new IndicatorRow();
+
+    IndicatorLayout(Context context) {
+        super(context);
+    }
+
+    void setStartView(View view) {
+        if (row.getStartView() != null) {
+            removeView(row.getStartView());
+        }
+        row.setStartView(view);
+        if (view != null) {
+            addView(view);
+        }
+    }
+
+    void setEndView(View view) {
+        if (row.getEndView() != null) {
+            removeView(row.getEndView());
+        }
+        row.setEndView(view);
+        if (view != null) {
+            addView(view);
+        }
+    }
+
+    @Override
+    protected void onMeasure(int widthMeasureSpec, int heightMeasureSpec) {
+        final int horizontalPadding = getPaddingLeft() + getPaddingRight();
+        final int verticalPadding = getPaddingTop() + getPaddingBottom();
+        final int childState = row.measure(widthMeasureSpec, heightMeasureSpec,
+                horizontalPadding, verticalPadding);
+        setMeasuredDimension(
+                ViewCompat.resolveSizeAndState(Math.max(row.getWidth() + horizontalPadding,
+                        getSuggestedMinimumWidth()), widthMeasureSpec, childState),
+                ViewCompat.resolveSizeAndState(Math.max(row.getHeight() + verticalPadding,
+                        getSuggestedMinimumHeight()), heightMeasureSpec,
+                        childState << ViewCompat.MEASURED_HEIGHT_STATE_SHIFT));
+    }
+
+    @Override
+    protected void onLayout(boolean changed, int left, int top, int right, int bottom) {
+        row.layout(getPaddingLeft(), getPaddingTop(), right - left - getPaddingRight(),
+                ViewCompat.getLayoutDirection(this) == ViewCompat.LAYOUT_DIRECTION_RTL);
+    }
+
+    @Override
+    public int getBaseline() {
+        final int maxAscent = row.getBaseline();
+        return maxAscent >= 0 ? getPaddingTop() + maxAscent : super.getBaseline();
+    }
+
+    @Override
+    public boolean shouldDelayChildPressedState() {
+        return false;
+    }
+}
@@ -0,0 +1,145 @@
+package org.buffer.android.buffertextinputlayout;
+
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+import android.view.ViewGroup;
+
+/**
+ * Measures and lays out the error and counter of a {@link BufferTextInputLayout} as a row, with
+ * the error pinned to the start and the counter pinned to the end. The counter keeps its natural
+ * width and the error takes whatever remains, so no spacer or weighted measure is needed. Like
+ * a horizontal LinearLayout, the two are aligned by their baselines.
+ * <p>
+ * The row doesn't own its views, so it can be used by a ViewGroup of its own or by the parent
+ * of the views directly.
+ */
+final class IndicatorRow {
+
+    private View startView;
+    private View endView;
+    private int width;
+    private int height;
+
+    View getStartView() {
+        return startView;
+    }
+
+    void setStartView(View view) {
+        startView = view;
+    }
+
+    View getEndView() {
+        return endView;
+    }
+
+    void setEndView(View view) {
+        endView = view;
+    }
+
+    /**
+     * Measures the views, after which {@link #getWidth()} and {@link #getHeight()} return the
+     * size of the row's content.
+     *
+     * @param horizontalPadding the width within the measure spec which isn't available to us
+     * @param verticalPadding   the height within the measure spec which isn't available to us
+     * @return the combined measured states of the views
+     */
+    int measure(int widthMeasureSpec, int heightMeasureSpec, int horizontalPadding,
+            int verticalPadding) {
+        int usedWidth = 0;
+        int childState = 0;
+        // The end view is measured first so that a long error can't squeeze it out
+        if (isShowing(endView)) {
+            final ViewGroup.LayoutParams lp = endView.getLayoutParams();
+            endView.measure(
+                    ViewGroup.getChildMeasureSpec(widthMeasureSpec, horizontalPadding, lp.width),
+                    ViewGroup.getChildMeasureSpec(heightMeasureSpec, verticalPadding, lp.height));
+            usedWidth += endView.getMeasuredWidth();
+            childState = ViewCompat.combineMeasuredStates(childState,
+                    ViewCompat.getMeasuredState(endView));
+        }
+        if (isShowing(startView)) {
+            final ViewGroup.LayoutParams lp = startView.getLayoutParams();
+            startView.measure(
+                    ViewGroup.getChildMeasureSpec(widthMeasureSpec,
+                            horizontalPadding + usedWidth, lp.width),
+                    ViewGroup.getChildMeasureSpec(heightMeasureSpec, verticalPadding, lp.height));
+            usedWidth += startView.getMeasuredWidth();
+            childState = ViewCompat.combineMeasuredStates(childState,
+                    ViewCompat.getMeasuredState(startView));
+        }
+        final int maxAscent = getBaseline();
+        width = usedWidth;
+        height = Math.max(getAlignedBottom(startView, maxAscent),
+                getAlignedBottom(endView, maxAscent));
+        return childState;
+    }
+
+    int getWidth() {
+        return width;
+    }
+
+    int getHeight() {
+        return height;
+    }
+
+    /**
+     * Lays out the measured views within the given content edges, in the coordinates of their
+     * parent.
+     */
+    void layout(int left, int top, int right, boolean isRtl) {
+        final int maxAscent = getBaseline();
+        final int startEdge = isRtl ? right : left;
+        final int endEdge = isRtl ? left : right;
+        if (isShowing(startView)) {
+            final int width = startView.getMeasuredWidth();
+            final int childLeft = isRtl ? startEdge - width : startEdge;
+            final int childTop = top + getAlignedTop(startView, maxAscent);
+            startView.layout(childLeft, childTop, childLeft + width,
+                    childTop + startView.getMeasuredHeight());
+        }
+        if (isShowing(endView)) {
+            final int width = endView.getMeasuredWidth();
+            final int childLeft = isRtl ? endEdge : endEdge - width;
+            final int childTop = top + getAlignedTop(endView, maxAscent);
+            endView.layout(childLeft, childTop, childLeft + width,
+                    childTop + endView.getMeasuredHeight());
+        }
+    }
+
+    /**
+     * Returns the baseline of the row from the top of its content, or -1 if neither view has
+     * one.
+     */
+    int getBaseline() {
+        return Math.max(getBaseline(startView), getBaseline(endView));
+    }
+
+    boolean isIndicator(View view) {
+        return view != null && (view == startView || view == endView);
+    }
+
+    private static boolean isShowing(View view) {
+        return view != null && view.getVisibility() != View.GONE;
+    }
+
+    /**
+     * Returns the baseline of {@code view}, or -1 if it isn't showing or doesn't have one.
+     */
+    private static int getBaseline(View view) {
+        return isShowing(view) ? view.getBaseline() : -1;
+    }
+
+    /**
+     * Returns the offset of {@code view} from the top of our content, so that its baseline is
+     * at {@code maxAscent}.
+     */
+    private static int getAlignedTop(View view, int maxAscent) {
+        final int baseline = view.getBaseline();
+        return baseline >= 0 && maxAscent >= 0 ? maxAscent - baseline : 0;
+    }
+
+    private static int getAlignedBottom(View view, int maxAscent) {
+        return isShowing(view) ? getAlignedTop(view, maxAscent) + view.getMeasuredHeight() : 0;
+    }
+}
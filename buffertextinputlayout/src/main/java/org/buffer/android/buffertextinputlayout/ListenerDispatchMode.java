@@ -0,0 +1,24 @@
+package org.buffer.android.buffertextinputlayout;
+
+/**
+ * Controls when the text listeners of a {@link BufferTextInputLayout} are called. In every mode
+ * other than {@link #IMMEDIATE}, edits made between two calls are coalesced in to one.
+ */
+public enum ListenerDispatchMode {
+    /**
+     * Listeners are called synchronously for every edit.
+     */
+    IMMEDIATE,
+    /**
+     * Listeners are called once no edit has been made for the given interval.
+     */
+    DEBOUNCED,
+    /**
+     * Listeners are called at most once per given interval, and always after the last edit.
+     */
+    THROTTLED,
+    /**
+     * Listeners are called at most once per frame, before the frame is drawn.
+     */
+    FRAME_ALIGNED
+}
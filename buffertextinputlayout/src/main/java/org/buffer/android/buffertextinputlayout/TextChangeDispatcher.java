@@ -0,0 +1,132 @@
+package org.buffer.android.buffertextinputlayout;
+
+import android.os.SystemClock;
+import android.support.v4.view.ViewCompat;
+import android.view.View;
+
+/**
+ * Schedules the text listener callbacks of a {@link BufferTextInputLayout} according to a
+ * {@link ListenerDispatchMode}. Edits received while a callback is pending are merged in to a
+ * single edit range, so the listener sees the same range it would if the edits had been made
+ * as one.
+ */
+final class TextChangeDispatcher implements Runnable {
+
+    interface Callback {
+        void onDispatchTextChanged(int start, int before, int count);
+    }
+
+    private final View view;
+    private final Callback callback;
+    private final EditRange range = new EditRange();
+    private ListenerDispatchMode mode = ListenerDispatchMode.IMMEDIATE;
+    private long intervalMillis;
+    private boolean pending;
+    private boolean scheduled;
+    private boolean suspended;
+    private long lastDispatchTime;
+
+    TextChangeDispatcher(View view, Callback callback) {
+        this.view = view;
+        this.callback = callback;
+    }
+
+    void setMode(ListenerDispatchMode mode, long intervalMillis) {
+        if (intervalMillis < 0) {
+            throw new IllegalArgumentException("Invalid interval " + intervalMillis);
+        }
+        flush();
+        this.mode = mode;
+        this.intervalMillis = intervalMillis;
+    }
+
+    ListenerDispatchMode getMode() {
+        return mode;
+    }
+
+    void onTextChanged(int start, int before, int count) {
+        if (!pending) {
+            range.set(start, before, count);
+            pending = true;
+        } else {
+            range.merge(start, before, count);
+        }
+        if (!suspended) {
+            schedule();
+        }
+    }
+
+    /**
+     * Sets whether dispatch is suspended. While suspended, edits are merged in to the pending
+     * edit but nothing is dispatched. Once resumed, the pending edit is dispatched as if it had
+     * just been made.
+     */
+    void setSuspended(boolean suspended) {
+        if (this.suspended != suspended) {
+            this.suspended = suspended;
+            if (!suspended && pending) {
+                schedule();
+            }
+        }
+    }
+
+    private void schedule() {
+        switch (mode) {
+            case DEBOUNCED:
+                view.removeCallbacks(this);
+                view.postDelayed(this, intervalMillis);
+                scheduled = true;
+                break;
+            case THROTTLED:
+                if (!scheduled) {
+                    final long wait = lastDispatchTime + intervalMillis
+                            - SystemClock.uptimeMillis();
+                    if (wait <= 0) {
+                        dispatch();
+                    } else {
+                        view.postDelayed(this, wait);
+                        scheduled = true;
+                    }
+                }
+                break;
+            case FRAME_ALIGNED:
+                if (!scheduled) {
+                    ViewCompat.postOnAnimation(view, this);
+                    scheduled = true;
+                }
+                break;
+            default:
+                dispatch();
+                break;
+        }
+    }
+
+    /**
+     * Immediately dispatches any pending edit, unless dispatch is suspended, in which case it's
+     * left for {@link #setSuspended(boolean)} to dispatch once resumed.
+     */
+    void flush() {
+        if (scheduled) {
+            view.removeCallbacks(this);
+            scheduled = false;
+        }
+        if (pending && !suspended) {
+            dispatch();
+        }
+    }
+
+    @Override
+    public void run() {
+        scheduled = false;
+        if (pending && !suspended) {
+            // Otherwise the edit is scheduled again once we're resumed
+            dispatch();
+        }
+    }
+
+    private void dispatch() {
+        pending = false;
+        lastDispatchTime = SystemClock.uptimeMillis();
+        callback.onDispatchTextChanged(range.getStart(), range.getBefore(), range.getCount());
+    }
+}
@@ -0,0 +1,22 @@
+package org.buffer.android.buffertextinputlayout;
+
+/**
+ * Notified after each edit to the text of a {@link BufferTextInputLayout}, without copying the
+ * text. Prefer this to {@link TextInputListener}, which has to copy the whole text to a String
+ * on every edit.
+ */
+public interface TextEditListener {
+
+    /**
+     * Called once an edit has been applied and the counter updated.
+     *
+     * @param text      the live text of the EditText. This is not a copy, so it must not be
+     *                  modified or held on to beyond this call
+     * @param start     the offset at which the edit happened
+     * @param before    the length of the text which was replaced
+     * @param count     the length of the text which replaced it
+     * @param textCount the count of the new text which the counter shows, i.e. as measured by
+     *                  the strategy of the active counter profile, if there is one
+     */
+    void onTextEdited(CharSequence text, int start, int before, int count, int textCount);
+}
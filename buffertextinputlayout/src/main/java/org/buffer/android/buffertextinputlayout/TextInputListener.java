@@ -1,5 +1,13 @@
 package org.buffer.android.buffertextinputlayout;
 
+/**
+ * Notified after the text of a {@link BufferTextInputLayout} changes. By the time this is called
+ * the counter has been updated, so {@link BufferTextInputLayout#getTextCount()} returns the count
+ * for the new text.
+ * <p>
+ * The text is copied to a String for every change, which gets expensive for long texts. Use a
+ * {@link TextEditListener} to receive the live text instead.
+ */
 public interface TextInputListener {
     void onTextChanged(String text);
 }
@@ -0,0 +1,142 @@
+package org.buffer.android.buffertextinputlayout;
+
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Runs the {@link TextValidator}s of a {@link BufferTextInputLayout} on an executor. Every edit
+ * bumps the text revision and cancels any validation in flight, and a result is only delivered
+ * if it was computed for the current revision.
+ */
+final class TextValidationPipeline {
+
+    interface Callback {
+        void onValidated(CharSequence error);
+    }
+
+    private static final String LOG_TAG = "TextValidation";
+    private static final TextValidator[] NO_VALIDATORS = new TextValidator[0];
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final Callback callback;
+    // Copied on write so that a running validation never sees the array change
+    private TextValidator[] validators = NO_VALIDATORS;
+    private Executor executor;
+    private int revision;
+    private FutureTask<CharSequence> task;
+
+    TextValidationPipeline(Callback callback) {
+        this.callback = callback;
+    }
+
+    void addValidator(TextValidator validator) {
+        final TextValidator[] newValidators = new TextValidator[validators.length + 1];
+        System.arraycopy(validators, 0, newValidators, 0, validators.length);
+        newValidators[validators.length] = validator;
+        validators = newValidators;
+    }
+
+    void removeValidator(TextValidator validator) {
+        for (int i = 0; i < validators.length; i++) {
+            if (validators[i] == validator) {
+                final TextValidator[] newValidators = new TextValidator[validators.length - 1];
+                System.arraycopy(validators, 0, newValidators, 0, i);
+                System.arraycopy(validators, i + 1, newValidators, i, newValidators.length - i);
+                validators = newValidators;
+                return;
+            }
+        }
+    }
+
+    boolean hasValidators() {
+        return validators.length > 0;
+    }
+
+    void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * Called for every edit, before the new text is validated. Anything still validating an
+     * older revision of the text is cancelled.
+     */
+    void onTextChanged() {
+        revision++;
+        cancel();
+    }
+
+    /**
+     * Validates {@code text}, which must be the current text.
+     */
+    void validate(final String text) {
+        cancel();
+        if (validators.length == 0) {
+            return;
+        }
+        final TextValidator[] validators = this.validators;
+        final int revision = this.revision;
+        task = new FutureTask<CharSequence>(new Callable<CharSequence>() {
+            @Override
+            public CharSequence call() {
+                for (TextValidator validator : validators) {
+                    if (Thread.currentThread().isInterrupted()) {
+                        return null;
+                    }
+                    final CharSequence error = validator.validate(text);
+                    if (error != null) {
+                        return error;
+                    }
+                }
+                return null;
+            }
+        }) {
+            @Override
+            protected void done() {
+                if (isCancelled()) {
+                    return;
+                }
+                try {
+                    postResult(revision, get());
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    Log.e(LOG_TAG, "Text validator failed", e.getCause());
+                }
+            }
+        };
+        (executor != null ? executor : AsyncTask.THREAD_POOL_EXECUTOR).execute(task);
+    }
+
+    /**
+     * Cancels any validation in flight.
+     *
+     * @return whether a validation was cancelled before completing
+     */
+    boolean cancel() {
+        if (task != null) {
+            final boolean cancelled = task.cancel(true);
+            task = null;
+            return cancelled;
+        }
+        return false;
+    }
+
+    private void postResult(final int revision, final CharSequence error) {
+        mainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                // Drop the result if the text has changed since it was validated
+                if (revision == TextValidationPipeline.this.revision) {
+                    callback.onValidated(error);
+                }
+            }
+        });
+    }
+}
@@ -0,0 +1,25 @@
+package org.buffer.android.buffertextinputlayout;
+
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+/**
+ * Validates the text of a {@link BufferTextInputLayout} off the main thread. Validators run on
+ * the layout's validation executor, and their result is shown through
+ * {@link BufferTextInputLayout#setError(CharSequence)} if the text hasn't changed since.
+ */
+public interface TextValidator {
+
+    /**
+     * Validates the given text. This is called on a background thread, so it must not touch
+     * any views. If the text changes while this is running the thread is interrupted, so long
+     * running validators should check {@link Thread#isInterrupted()} and give up early.
+     *
+     * @param text a snapshot of the text to validate
+     * @return the error to display, or null if the text is valid
+     */
+    @WorkerThread
+    @Nullable
+    CharSequence validate(@NonNull String text);
+}
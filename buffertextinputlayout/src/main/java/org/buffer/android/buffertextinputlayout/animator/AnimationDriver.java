@@ -0,0 +1,201 @@
+package org.buffer.android.buffertextinputlayout.animator;
+
+import android.animation.ValueAnimator;
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.animation.Interpolator;
+
+import java.lang.reflect.Method;
+
+/**
+ * Steps every running {@link DrivenValueAnimatorImpl} from a single {@link Choreographer} frame
+ * callback. The state of each animation is held in primitive arrays, indexed by the slot which
+ * the animator is given when it starts, so stepping a frame doesn't allocate.
+ * <p>
+ * This must only be used from the main thread.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+final class AnimationDriver implements Choreographer.FrameCallback {
+
+    private static final String LOG_TAG = "AnimationDriver";
+    private static final long NANOS_PER_MS = 1000000L;
+    private static final int INITIAL_CAPACITY = 4;
+    // Marks an animation which hasn't had its first frame yet
+    private static final long NOT_STARTED = -1L;
+
+    private static AnimationDriver sInstance;
+    private static Method sGetDurationScaleMethod;
+    private static boolean sGetDurationScaleMethodFetched;
+
+    static AnimationDriver getInstance() {
+        if (sInstance == null) {
+            sInstance = new AnimationDriver();
+        }
+        return sInstance;
+    }
+
+    private final Choreographer mChoreographer;
+    private DrivenValueAnimatorImpl[] mAnimators = new DrivenValueAnimatorImpl[INITIAL_CAPACITY];
+    private long[] mStartTimes = new long[INITIAL_CAPACITY];
+    private long[] mDurations = new long[INITIAL_CAPACITY];
+    private float[] mFromValues = new float[INITIAL_CAPACITY];
+    private float[] mToValues = new float[INITIAL_CAPACITY];
+    private Interpolator[] mInterpolators = new Interpolator[INITIAL_CAPACITY];
+    // The animators stepped in the current frame, as listeners may start or cancel animations
+    private DrivenValueAnimatorImpl[] mFrameAnimators =
+            new DrivenValueAnimatorImpl[INITIAL_CAPACITY];
+    private int mCount;
+    private boolean mFrameScheduled;
+
+    private AnimationDriver() {
+        mChoreographer = Choreographer.getInstance();
+    }
+
+    /**
+     * Returns the animator duration scale from the developer or accessibility settings, which
+     * ValueAnimator applies to every animation, or 0 if animations are turned off. It's only
+     * public API from API 26, but ValueAnimator has had it, hidden, since API 17.
+     */
+    static float getDurationScale() {
+        if (Build.VERSION.SDK_INT < 17) {
+            return 1f;
+        }
+        if (!sGetDurationScaleMethodFetched) {
+            try {
+                sGetDurationScaleMethod = ValueAnimator.class.getMethod("getDurationScale");
+            } catch (NoSuchMethodException e) {
+                Log.e(LOG_TAG, "Unable to find the animator duration scale", e);
+            }
+            sGetDurationScaleMethodFetched = true;
+        }
+        if (sGetDurationScaleMethod != null) {
+            try {
+                return (Float) sGetDurationScaleMethod.invoke(null);
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Unable to read the animator duration scale", e);
+                sGetDurationScaleMethod = null;
+            }
+        }
+        return 1f;
+    }
+
+    /**
+     * Starts, or restarts, the animation of {@code animator} and returns its slot. The duration
+     * should already be scaled by {@link #getDurationScale()}.
+     */
+    int start(DrivenValueAnimatorImpl animator, float from, float to, long duration,
+              Interpolator interpolator) {
+        int slot = animator.mSlot;
+        if (slot < 0) {
+            if (mCount == mAnimators.length) {
+                grow();
+            }
+            slot = mCount++;
+            mAnimators[slot] = animator;
+        }
+        mStartTimes[slot] = NOT_STARTED;
+        mDurations[slot] = duration;
+        mFromValues[slot] = from;
+        mToValues[slot] = to;
+        mInterpolators[slot] = interpolator;
+        if (!mFrameScheduled) {
+            mFrameScheduled = true;
+            mChoreographer.postFrameCallback(this);
+        }
+        return slot;
+    }
+
+    /**
+     * Stops the animation in {@code slot}. The last animation is moved in to the free slot.
+     */
+    void remove(int slot) {
+        mAnimators[slot].mSlot = -1;
+        final int last = --mCount;
+        if (slot != last) {
+            mAnimators[slot] = mAnimators[last];
+            mAnimators[slot].mSlot = slot;
+            mStartTimes[slot] = mStartTimes[last];
+            mDurations[slot] = mDurations[last];
+            mFromValues[slot] = mFromValues[last];
+            mToValues[slot] = mToValues[last];
+            mInterpolators[slot] = mInterpolators[last];
+        }
+        mAnimators[last] = null;
+        mInterpolators[last] = null;
+        if (mCount == 0 && mFrameScheduled) {
+            mFrameScheduled = false;
+            mChoreographer.removeFrameCallback(this);
+        }
+    }
+
+    float getEndValue(int slot) {
+        return mToValues[slot];
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        mFrameScheduled = false;
+        final long frameTime = frameTimeNanos / NANOS_PER_MS;
+        final int count = mCount;
+        // A listener may start another animation and make us grow, which replaces the array
+        final DrivenValueAnimatorImpl[] frameAnimators = mFrameAnimators;
+        System.arraycopy(mAnimators, 0, frameAnimators, 0, count);
+        // Iterate backwards so that removing a finished animation doesn't skip another
+        for (int i = count - 1; i >= 0; i--) {
+            if (mStartTimes[i] == NOT_STARTED) {
+                mStartTimes[i] = frameTime;
+            }
+            final long duration = mDurations[i];
+            final float fraction = duration > 0
+                    ? Math.min(1f, (frameTime - mStartTimes[i]) / (float) duration) : 1f;
+            final Interpolator interpolator = mInterpolators[i];
+            final float interpolated = interpolator != null
+                    ? interpolator.getInterpolation(fraction) : fraction;
+            final DrivenValueAnimatorImpl animator = mAnimators[i];
+            animator.mAnimatedValue = mFromValues[i]
+                    + (interpolated * (mToValues[i] - mFromValues[i]));
+            if (fraction >= 1f) {
+                animator.mEnding = true;
+                remove(i);
+            }
+        }
+        for (int i = 0; i < count; i++) {
+            final DrivenValueAnimatorImpl animator = frameAnimators[i];
+            frameAnimators[i] = null;
+            // Skip any animation which was cancelled by an earlier listener
+            if (animator.mSlot >= 0 || animator.mEnding) {
+                animator.mEnding = false;
+                animator.dispatchUpdate();
+            }
+        }
+        if (mCount > 0 && !mFrameScheduled) {
+            mFrameScheduled = true;
+            mChoreographer.postFrameCallback(this);
+        }
+    }
+
+    private void grow() {
+        final int capacity = mAnimators.length * 2;
+        final DrivenValueAnimatorImpl[] animators = new DrivenValueAnimatorImpl[capacity];
+        System.arraycopy(mAnimators, 0, animators, 0, mCount);
+        mAnimators = animators;
+        mFrameAnimators = new DrivenValueAnimatorImpl[capacity];
+        final long[] startTimes = new long[capacity];
+        System.arraycopy(mStartTimes, 0, startTimes, 0, mCount);
+        mStartTimes = startTimes;
+        final long[] durations = new long[capacity];
+        System.arraycopy(mDurations, 0, durations, 0, mCount);
+        mDurations = durations;
+        final float[] fromValues = new float[capacity];
+        System.arraycopy(mFromValues, 0, fromValues, 0, mCount);
+        mFromValues = fromValues;
+        final float[] toValues = new float[capacity];
+        System.arraycopy(mToValues, 0, toValues, 0, mCount);
+        mToValues = toValues;
+        final Interpolator[] interpolators = new Interpolator[capacity];
+        System.arraycopy(mInterpolators, 0, interpolators, 0, mCount);
+        mInterpolators = interpolators;
+    }
+}
@@ -0,0 +1,109 @@
+package org.buffer.android.buffertextinputlayout.animator;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import android.view.animation.Interpolator;
+
+import java.util.ArrayList;
+
+/**
+ * A {@link ValueAnimatorCompat.Impl} which is stepped by the process wide
+ * {@link AnimationDriver}, rather than by a {@code ValueAnimator} of its own. The animated value
+ * is kept as a primitive so reading it on each frame doesn't unbox.
+ */
+@TargetApi(Build.VERSION_CODES.JELLY_BEAN)
+public class DrivenValueAnimatorImpl extends ValueAnimatorCompat.Impl {
+
+    private static final long DEFAULT_DURATION = 200;
+
+    private final ArrayList<AnimatorUpdateListenerProxy> mUpdateListeners = new ArrayList<>();
+    private Interpolator mInterpolator;
+    private long mDuration = DEFAULT_DURATION;
+    private float mFromValue;
+    private float mToValue = 1f;
+
+    // Written by the driver
+    int mSlot = -1;
+    boolean mEnding;
+    float mAnimatedValue;
+
+    @Override
+    public void start() {
+        final float durationScale = AnimationDriver.getDurationScale();
+        if (durationScale == 0f) {
+            // Animations are turned off, so like ValueAnimator, jump straight to the end
+            cancel();
+            mAnimatedValue = mToValue;
+            dispatchUpdate();
+            return;
+        }
+        mSlot = AnimationDriver.getInstance().start(this, mFromValue, mToValue,
+                (long) (mDuration * durationScale), mInterpolator);
+        // Like ValueAnimator, move to the start value straight away
+        mAnimatedValue = mFromValue;
+        dispatchUpdate();
+    }
+
+    @Override
+    public boolean isRunning() {
+        return mSlot >= 0;
+    }
+
+    @Override
+    public void setInterpolator(Interpolator interpolator) {
+        mInterpolator = interpolator;
+    }
+
+    @Override
+    public void addUpdateListener(AnimatorUpdateListenerProxy updateListener) {
+        if (updateListener != null) {
+            mUpdateListeners.add(updateListener);
+        }
+    }
+
+    @Override
+    public void setFloatValues(float from, float to) {
+        mFromValue = from;
+        mToValue = to;
+    }
+
+    @Override
+    public float getAnimatedFloatValue() {
+        return mAnimatedValue;
+    }
+
+    @Override
+    public void setDuration(long duration) {
+        mDuration = duration;
+    }
+
+    @Override
+    public void cancel() {
+        if (mSlot >= 0) {
+            AnimationDriver.getInstance().remove(mSlot);
+        }
+        mEnding = false;
+    }
+
+    @Override
+    public void end() {
+        if (mSlot >= 0) {
+            final AnimationDriver driver = AnimationDriver.getInstance();
+            mAnimatedValue = driver.getEndValue(mSlot);
+            driver.remove(mSlot);
+            mEnding = false;
+            dispatchUpdate();
+        }
+    }
+
+    @Override
+    public long getDuration() {
+        return mDuration;
+    }
+
+    void dispatchUpdate() {
+        for (int i = 0, count = mUpdateListeners.size(); i < count; i++) {
+            mUpdateListeners.get(i).onAnimationUpdate();
+        }
+    }
+}
@@ -0,0 +1,89 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+import java.text.CharacterIterator;
+
+/**
+ * A {@link CharacterIterator} over a window of a {@link CharSequence}, which lets a
+ * {@link java.text.BreakIterator} work on part of an {@link android.text.Editable} without
+ * copying it into a String first.
+ */
+final class CharSequenceIterator implements CharacterIterator {
+
+    private CharSequence text;
+    private int begin;
+    private int end;
+    private int index;
+
+    void set(CharSequence text, int begin, int end) {
+        this.text = text;
+        this.begin = begin;
+        this.end = end;
+        this.index = begin;
+    }
+
+    @Override
+    public char first() {
+        index = begin;
+        return current();
+    }
+
+    @Override
+    public char last() {
+        index = end > begin ? end - 1 : end;
+        return current();
+    }
+
+    @Override
+    public char current() {
+        return index >= begin && index < end ? text.charAt(index) : DONE;
+    }
+
+    @Override
+    public char next() {
+        if (index < end) {
+            index++;
+        }
+        return current();
+    }
+
+    @Override
+    public char previous() {
+        if (index <= begin) {
+            return DONE;
+        }
+        index--;
+        return current();
+    }
+
+    @Override
+    public char setIndex(int position) {
+        if (position < begin || position > end) {
+            throw new IllegalArgumentException("Invalid index " + position);
+        }
+        index = position;
+        return current();
+    }
+
+    @Override
+    public int getBeginIndex() {
+        return begin;
+    }
+
+    @Override
+    public int getEndIndex() {
+        return end;
+    }
+
+    @Override
+    public int getIndex() {
+        return index;
+    }
+
+    @Override
+    public Object clone() {
+        final CharSequenceIterator clone = new CharSequenceIterator();
+        clone.set(text, begin, end);
+        clone.index = index;
+        return clone;
+    }
+}
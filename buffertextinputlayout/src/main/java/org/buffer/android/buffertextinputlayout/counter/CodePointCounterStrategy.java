@@ -0,0 +1,40 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+/**
+ * Counts Unicode code points, so that a character outside of the Basic Multilingual Plane (such
+ * as most emoji) counts as one rather than as the two UTF-16 units of its surrogate pair.
+ */
+public final class CodePointCounterStrategy implements CounterStrategy {
+
+    @Override
+    public int getRegionStart(CharSequence text, int offset) {
+        // Include a preceding high surrogate, as the edit may complete or break its pair
+        if (offset > 0 && Character.isHighSurrogate(text.charAt(offset - 1))) {
+            return offset - 1;
+        }
+        return offset;
+    }
+
+    @Override
+    public int getRegionEnd(CharSequence text, int offset) {
+        // Include a following low surrogate, as the edit may complete or break its pair
+        if (offset < text.length() && Character.isLowSurrogate(text.charAt(offset))) {
+            return offset + 1;
+        }
+        return offset;
+    }
+
+    @Override
+    public int getNextBoundary(CharSequence text, int offset) {
+        if (Character.isHighSurrogate(text.charAt(offset)) && offset + 1 < text.length()
+                && Character.isLowSurrogate(text.charAt(offset + 1))) {
+            return offset + 2;
+        }
+        return offset + 1;
+    }
+
+    @Override
+    public int count(CharSequence text, int start, int end) {
+        return Character.codePointCount(text, start, end);
+    }
+}
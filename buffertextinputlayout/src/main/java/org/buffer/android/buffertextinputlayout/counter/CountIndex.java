@@ -0,0 +1,269 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+import java.util.Arrays;
+
+/**
+ * An index over the count of a piece of text which answers "what is the count up to this
+ * offset" and "at which offset does the count pass this value" in O(log n), so that the point
+ * at which a long text goes over a limit can be found without scanning it.
+ * <p>
+ * The text is split in to chunks of roughly {@link #CHUNK_LENGTH} chars, each ending on a
+ * region boundary of the {@link CounterStrategy}, and the length and count of each chunk are
+ * held in a pair of Fenwick trees. An edit only recounts the chunks it touches. Like
+ * {@link IncrementalCounter}, the index must be told about every edit through
+ * {@link #onTextChanged}, and falls back to a full rebuild if it loses track of the text.
+ */
+public final class CountIndex {
+
+    static final int CHUNK_LENGTH = 256;
+
+    private CounterStrategy strategy;
+    private int length;
+    private int chunkCount;
+    private int[] chunkLengths = new int[16];
+    private int[] chunkCounts = new int[16];
+    // 1-based Fenwick trees over chunkLengths and chunkCounts
+    private int[] lengthTree = new int[17];
+    private int[] countTree = new int[17];
+    private int[] scratchLengths = new int[4];
+    private int[] scratchCounts = new int[4];
+
+    public CountIndex(CounterStrategy strategy) {
+        this.strategy = strategy;
+    }
+
+    public CounterStrategy getStrategy() {
+        return strategy;
+    }
+
+    /**
+     * Sets the strategy to count with and rebuilds the index for {@code text}.
+     */
+    public void setStrategy(CounterStrategy strategy, CharSequence text) {
+        this.strategy = strategy;
+        reset(text);
+    }
+
+    /**
+     * Discards the index and rebuilds it for the whole of {@code text}.
+     */
+    public void reset(CharSequence text) {
+        length = text == null ? 0 : text.length();
+        chunkCount = 0;
+        if (length > 0) {
+            final int pieces = chunk(text, 0, length);
+            ensureCapacity(pieces);
+            System.arraycopy(scratchLengths, 0, chunkLengths, 0, pieces);
+            System.arraycopy(scratchCounts, 0, chunkCounts, 0, pieces);
+            chunkCount = pieces;
+        }
+        rebuildTrees();
+    }
+
+    /**
+     * Updates the index for an edit. Must be called from
+     * {@link android.text.TextWatcher#onTextChanged(CharSequence, int, int, int)}.
+     */
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        final int newLength = s.length();
+        if (newLength != length - before + count || chunkCount == 0) {
+            reset(s);
+            return;
+        }
+        final int delta = count - before;
+        // Find the region around the edit in the new text, and the chunks which covered it in
+        // the old text
+        final int regionStart = strategy.getRegionStart(s, start);
+        final int oldRegionEnd = Math.max(regionStart,
+                strategy.getRegionEnd(s, start + count) - delta);
+        int first = chunkAt(regionStart);
+        int last = chunkAt(Math.max(regionStart, oldRegionEnd - 1));
+        int spanStart = prefix(lengthTree, first);
+        int spanEnd = prefix(lengthTree, last + 1) + delta;
+        // Absorb small spans in to the following chunk, so that deletions don't leave the text
+        // split in to lots of tiny chunks
+        while (spanEnd - spanStart < CHUNK_LENGTH / 2 && last + 1 < chunkCount) {
+            last++;
+            spanEnd += chunkLengths[last];
+        }
+        final int pieces = spanEnd > spanStart ? chunk(s, spanStart, spanEnd) : 0;
+        final int replaced = last - first + 1;
+        length = newLength;
+        if (pieces == replaced) {
+            for (int i = 0; i < pieces; i++) {
+                final int chunk = first + i;
+                update(lengthTree, chunk, scratchLengths[i] - chunkLengths[chunk]);
+                update(countTree, chunk, scratchCounts[i] - chunkCounts[chunk]);
+                chunkLengths[chunk] = scratchLengths[i];
+                chunkCounts[chunk] = scratchCounts[i];
+            }
+        } else {
+            final int newChunkCount = chunkCount - replaced + pieces;
+            ensureCapacity(newChunkCount);
+            System.arraycopy(chunkLengths, last + 1, chunkLengths, first + pieces,
+                    chunkCount - last - 1);
+            System.arraycopy(chunkCounts, last + 1, chunkCounts, first + pieces,
+                    chunkCount - last - 1);
+            System.arraycopy(scratchLengths, 0, chunkLengths, first, pieces);
+            System.arraycopy(scratchCounts, 0, chunkCounts, first, pieces);
+            chunkCount = newChunkCount;
+            rebuildTrees();
+        }
+    }
+
+    /**
+     * Returns the count of the whole text.
+     */
+    public int getCount() {
+        return prefix(countTree, chunkCount);
+    }
+
+    /**
+     * Returns the count of the text before {@code offset}, which should be a region boundary
+     * of the strategy.
+     *
+     * @param text the text the index was last updated with
+     */
+    public int getCountBefore(CharSequence text, int offset) {
+        if (offset <= 0 || chunkCount == 0) {
+            return 0;
+        }
+        if (offset >= length) {
+            return getCount();
+        }
+        final int chunk = chunkAt(offset);
+        final int chunkStart = prefix(lengthTree, chunk);
+        return prefix(countTree, chunk) + strategy.count(text, chunkStart, offset);
+    }
+
+    /**
+     * Returns the largest region boundary at which the count of the text before it is no more
+     * than {@code count}. This is the offset at which the text goes over a limit of
+     * {@code count}, or the length of the text if it doesn't.
+     *
+     * @param text the text the index was last updated with
+     */
+    public int getOffsetAtCount(CharSequence text, int count) {
+        if (count >= getCount()) {
+            return length;
+        }
+        if (count < 0) {
+            return 0;
+        }
+        // Find the first chunk which takes the running count past the target, then walk the
+        // regions within it
+        final int chunk = search(countTree, count);
+        int running = prefix(countTree, chunk);
+        int offset = prefix(lengthTree, chunk);
+        final int chunkEnd = offset + chunkLengths[chunk];
+        while (offset < chunkEnd) {
+            final int next = Math.min(chunkEnd,
+                    Math.max(offset + 1, strategy.getNextBoundary(text, offset)));
+            final int regionCount = strategy.count(text, offset, next);
+            if (running + regionCount > count) {
+                return offset;
+            }
+            running += regionCount;
+            offset = next;
+        }
+        return chunkEnd;
+    }
+
+    /**
+     * Splits the text between {@code start} and {@code end}, both region boundaries, in to
+     * chunks, leaving their lengths and counts in the scratch arrays.
+     *
+     * @return the number of chunks
+     */
+    private int chunk(CharSequence text, int start, int end) {
+        int pieces = 0;
+        int offset = start;
+        while (offset < end) {
+            int chunkEnd;
+            if (end - offset < CHUNK_LENGTH + CHUNK_LENGTH / 2) {
+                chunkEnd = end;
+            } else {
+                chunkEnd = Math.min(end, strategy.getRegionEnd(text, offset + CHUNK_LENGTH));
+                if (chunkEnd <= offset) {
+                    chunkEnd = end;
+                }
+            }
+            if (pieces == scratchLengths.length) {
+                scratchLengths = Arrays.copyOf(scratchLengths, pieces * 2);
+                scratchCounts = Arrays.copyOf(scratchCounts, pieces * 2);
+            }
+            scratchLengths[pieces] = chunkEnd - offset;
+            scratchCounts[pieces] = strategy.count(text, offset, chunkEnd);
+            pieces++;
+            offset = chunkEnd;
+        }
+        return pieces;
+    }
+
+    /**
+     * Returns the index of the chunk containing {@code offset}, or the last chunk if
+     * {@code offset} is the end of the text.
+     */
+    private int chunkAt(int offset) {
+        return Math.min(search(lengthTree, offset), chunkCount - 1);
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (chunkLengths.length < capacity) {
+            final int newCapacity = Math.max(capacity, chunkLengths.length * 2);
+            chunkLengths = Arrays.copyOf(chunkLengths, newCapacity);
+            chunkCounts = Arrays.copyOf(chunkCounts, newCapacity);
+            lengthTree = new int[newCapacity + 1];
+            countTree = new int[newCapacity + 1];
+        }
+    }
+
+    private void rebuildTrees() {
+        buildTree(lengthTree, chunkLengths);
+        buildTree(countTree, chunkCounts);
+    }
+
+    private void buildTree(int[] tree, int[] values) {
+        Arrays.fill(tree, 0, chunkCount + 1, 0);
+        for (int i = 1; i <= chunkCount; i++) {
+            tree[i] += values[i - 1];
+            final int parent = i + (i & -i);
+            if (parent <= chunkCount) {
+                tree[parent] += tree[i];
+            }
+        }
+    }
+
+    private void update(int[] tree, int chunk, int delta) {
+        for (int i = chunk + 1; i <= chunkCount; i += i & -i) {
+            tree[i] += delta;
+        }
+    }
+
+    /**
+     * Returns the sum of the first {@code chunks} values.
+     */
+    private static int prefix(int[] tree, int chunks) {
+        int sum = 0;
+        for (int i = chunks; i > 0; i -= i & -i) {
+            sum += tree[i];
+        }
+        return sum;
+    }
+
+    /**
+     * Returns the number of leading chunks whose values sum to no more than {@code target},
+     * which is the index of the chunk which takes the sum past it.
+     */
+    private int search(int[] tree, int target) {
+        int index = 0;
+        for (int step = Integer.highestOneBit(Math.max(chunkCount, 1)); step > 0; step >>= 1) {
+            final int next = index + step;
+            if (next <= chunkCount && tree[next] <= target) {
+                index = next;
+                target -= tree[next];
+            }
+        }
+        return index;
+    }
+}
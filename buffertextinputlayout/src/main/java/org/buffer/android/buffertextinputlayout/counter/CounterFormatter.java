@@ -0,0 +1,170 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+import java.text.DecimalFormatSymbols;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Formats counter values in to a reusable char buffer, which can be passed straight to
+ * {@link android.widget.TextView#setText(char[], int, int)}. Once the buffer has grown to fit,
+ * formatting a value allocates nothing.
+ * <p>
+ * The standard "count / max" pattern is split around the count when the formatter is created,
+ * and the part containing the max is rendered only when the max or the locale changes. Values
+ * in that pattern use the digits of the default locale, as {@link String#format} would.
+ */
+public final class CounterFormatter {
+
+    private static final String COUNT_PLACEHOLDER = "%1$d";
+    private static final String MAX_PLACEHOLDER = "%2$d";
+    private static final Map<Locale, Character> ZERO_DIGIT_CACHE = new HashMap<>();
+
+    private final String pattern;
+    private final String prefix;
+    private final String suffixPattern;
+    private Locale locale;
+    private char zeroDigit = '0';
+    private int maxLength;
+    private char[] suffix = new char[0];
+    private int suffixLength;
+    private boolean suffixValid;
+    private char[] text = new char[16];
+    private int length;
+
+    /**
+     * @param pattern the pattern used by {@link #formatWithMax(int)}, in which {@code %1$d} is
+     *                replaced by the count and {@code %2$d} by the max
+     */
+    public CounterFormatter(String pattern) {
+        this.pattern = pattern;
+        final int countIndex = pattern.indexOf(COUNT_PLACEHOLDER);
+        if (countIndex != -1 && pattern.indexOf(COUNT_PLACEHOLDER, countIndex + 1) == -1
+                && pattern.lastIndexOf(MAX_PLACEHOLDER) > countIndex) {
+            prefix = pattern.substring(0, countIndex).replace("%%", "%");
+            suffixPattern = pattern.substring(countIndex + COUNT_PLACEHOLDER.length());
+        } else {
+            // We can't split this pattern, so we'll have to format it in full each time
+            prefix = null;
+            suffixPattern = null;
+        }
+    }
+
+    public void setMaxLength(int maxLength) {
+        if (this.maxLength != maxLength) {
+            this.maxLength = maxLength;
+            suffixValid = false;
+        }
+    }
+
+    /**
+     * Formats {@code value} on its own, using ASCII digits.
+     */
+    public void format(int value) {
+        length = 0;
+        appendInt(value, '0');
+    }
+
+    /**
+     * Formats {@code value} and the max length using the pattern.
+     */
+    public void formatWithMax(int value) {
+        updateLocale();
+        length = 0;
+        if (prefix == null) {
+            appendString(String.format(locale, pattern, value, maxLength));
+            return;
+        }
+        if (!suffixValid) {
+            updateSuffix();
+        }
+        appendString(prefix);
+        appendInt(value, zeroDigit);
+        ensureCapacity(length + suffixLength);
+        System.arraycopy(suffix, 0, text, length, suffixLength);
+        length += suffixLength;
+    }
+
+    /**
+     * Returns the buffer holding the last formatted text. Only the first {@link #getLength()}
+     * chars are valid, and the contents change with each call to format.
+     */
+    public char[] getText() {
+        return text;
+    }
+
+    public int getLength() {
+        return length;
+    }
+
+    private void updateLocale() {
+        final Locale current = Locale.getDefault();
+        if (current != locale) {
+            locale = current;
+            zeroDigit = getZeroDigit(current);
+            suffixValid = false;
+        }
+    }
+
+    private void updateSuffix() {
+        // Render the max in to our own buffer, then splice it in to the suffix
+        length = 0;
+        appendInt(maxLength, zeroDigit);
+        final String max = new String(text, 0, length);
+        length = 0;
+        final String rendered = suffixPattern.replace(MAX_PLACEHOLDER, max).replace("%%", "%");
+        suffixLength = rendered.length();
+        if (suffix.length < suffixLength) {
+            suffix = new char[suffixLength];
+        }
+        rendered.getChars(0, suffixLength, suffix, 0);
+        suffixValid = true;
+    }
+
+    private void appendString(String s) {
+        final int sLength = s.length();
+        ensureCapacity(length + sLength);
+        s.getChars(0, sLength, text, length);
+        length += sLength;
+    }
+
+    private void appendInt(int value, char zero) {
+        // Use a long so that Integer.MIN_VALUE can be negated
+        long remaining = value;
+        if (remaining < 0) {
+            ensureCapacity(length + 1);
+            // String.format always uses an ASCII minus sign for integers
+            text[length++] = '-';
+            remaining = -remaining;
+        }
+        int digits = 1;
+        for (long i = remaining; i >= 10; i /= 10) {
+            digits++;
+        }
+        ensureCapacity(length + digits);
+        for (int i = length + digits - 1; i >= length; i--) {
+            text[i] = (char) (zero + (remaining % 10));
+            remaining /= 10;
+        }
+        length += digits;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (text.length < capacity) {
+            final char[] newText = new char[Math.max(capacity, text.length * 2)];
+            System.arraycopy(text, 0, newText, 0, length);
+            text = newText;
+        }
+    }
+
+    private static char getZeroDigit(Locale locale) {
+        synchronized (ZERO_DIGIT_CACHE) {
+            Character zeroDigit = ZERO_DIGIT_CACHE.get(locale);
+            if (zeroDigit == null) {
+                zeroDigit = DecimalFormatSymbols.getInstance(locale).getZeroDigit();
+                ZERO_DIGIT_CACHE.put(locale, zeroDigit);
+            }
+            return zeroDigit;
+        }
+    }
+}
@@ -0,0 +1,37 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+/**
+ * Defines how the text of a field is measured for its character counter.
+ * <p>
+ * Strategies are driven incrementally by {@link IncrementalCounter}: only the region around
+ * each edit is measured, so a strategy must be able to say where in the text counting can
+ * safely be restarted. The count of a region bounded by such offsets must not depend on any
+ * text outside of it.
+ */
+public interface CounterStrategy {
+
+    /**
+     * Returns the offset at or before {@code offset} from which the text can be counted
+     * independently of anything that precedes it.
+     */
+    int getRegionStart(CharSequence text, int offset);
+
+    /**
+     * Returns the offset at or after {@code offset} up to which the text can be counted
+     * independently of anything that follows it.
+     */
+    int getRegionEnd(CharSequence text, int offset);
+
+    /**
+     * Returns the first offset after {@code offset}, which is itself a region boundary, at which
+     * the text can be split without changing its count. This is the end of the single countable
+     * unit starting at {@code offset}, e.g. a code point or a grapheme cluster.
+     */
+    int getNextBoundary(CharSequence text, int offset);
+
+    /**
+     * Returns the count of the text between {@code start} and {@code end}, which are offsets
+     * previously returned by {@link #getRegionStart} and {@link #getRegionEnd}.
+     */
+    int count(CharSequence text, int start, int end);
+}
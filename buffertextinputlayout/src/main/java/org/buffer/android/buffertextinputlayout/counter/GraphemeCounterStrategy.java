@@ -0,0 +1,131 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+import java.text.BreakIterator;
+import java.util.Locale;
+
+/**
+ * Counts extended grapheme clusters, i.e. what the user perceives as a single character. An
+ * emoji with a skin tone modifier, a ZWJ sequence or a flag counts as one.
+ * <p>
+ * Segmentation is done with a single cached {@link BreakIterator} which only ever sees a window
+ * of the text around the edited region, so typing into a long, emoji-heavy text never
+ * re-segments the whole of it. Instances are stateful and must only be used from one thread.
+ * <p>
+ * Whether there's a boundary before a character can depend on more than the character before
+ * it: a ZWJ only joins on to an emoji if the ZWJ follows an emoji, and regional indicators pair
+ * up from the start of their run. So a region only ends at a boundary which no edit before it
+ * can move, i.e. one which doesn't follow a ZWJ or a combining mark, and doesn't split a run
+ * of regional indicators.
+ */
+public final class GraphemeCounterStrategy implements CounterStrategy {
+
+    /**
+     * How far either side of an edit we look for a cluster boundary. Clusters longer than this
+     * are extremely unlikely, but if one does occur it is simply counted as more than one.
+     */
+    private static final int CONTEXT_LENGTH = 32;
+    private static final char ZERO_WIDTH_JOINER = '\u200D';
+    private static final int FIRST_REGIONAL_INDICATOR = 0x1F1E6;
+    private static final int LAST_REGIONAL_INDICATOR = 0x1F1FF;
+
+    private final BreakIterator breakIterator;
+    private final CharSequenceIterator iterator = new CharSequenceIterator();
+
+    public GraphemeCounterStrategy() {
+        this(Locale.getDefault());
+    }
+
+    public GraphemeCounterStrategy(Locale locale) {
+        this(BreakIterator.getCharacterInstance(locale));
+    }
+
+    // Visible for testing, with the segmentation rules of a particular ICU release
+    GraphemeCounterStrategy(BreakIterator breakIterator) {
+        this.breakIterator = breakIterator;
+    }
+
+    @Override
+    public int getRegionStart(CharSequence text, int offset) {
+        if (offset <= 0) {
+            return 0;
+        }
+        final int windowStart = Math.max(0, offset - CONTEXT_LENGTH);
+        setWindow(text, windowStart, Math.min(text.length(), offset + CONTEXT_LENGTH));
+        // This is the boundary strictly before the offset, which gives us a cluster of context
+        // in case the edit joins on to the preceding cluster
+        final int boundary = breakIterator.preceding(offset);
+        return boundary == BreakIterator.DONE ? windowStart : boundary;
+    }
+
+    @Override
+    public int getRegionEnd(CharSequence text, int offset) {
+        final int length = text.length();
+        if (offset >= length) {
+            return length;
+        }
+        final int windowEnd = Math.min(length, offset + CONTEXT_LENGTH);
+        setWindow(text, Math.max(0, offset - CONTEXT_LENGTH), windowEnd);
+        int boundary = breakIterator.following(offset);
+        while (boundary != BreakIterator.DONE && boundary < windowEnd
+                && !isStableBoundary(text, boundary)) {
+            boundary = breakIterator.next();
+        }
+        return boundary == BreakIterator.DONE ? windowEnd : boundary;
+    }
+
+    @Override
+    public int getNextBoundary(CharSequence text, int offset) {
+        // The offset is already a boundary, so the one following it ends the cluster which
+        // starts there, whether or not an edit could move it
+        final int length = text.length();
+        if (offset >= length) {
+            return length;
+        }
+        final int windowEnd = Math.min(length, offset + CONTEXT_LENGTH);
+        setWindow(text, offset, windowEnd);
+        final int boundary = breakIterator.following(offset);
+        return boundary == BreakIterator.DONE ? windowEnd : boundary;
+    }
+
+    @Override
+    public int count(CharSequence text, int start, int end) {
+        if (start >= end) {
+            return 0;
+        }
+        setWindow(text, start, end);
+        int count = 0;
+        breakIterator.first();
+        while (breakIterator.next() != BreakIterator.DONE) {
+            count++;
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether the boundary at {@code offset} depends only on the characters either side
+     * of it, so that it stays a boundary however the text before those is edited.
+     */
+    private static boolean isStableBoundary(CharSequence text, int offset) {
+        final char previous = text.charAt(offset - 1);
+        if (previous == ZERO_WIDTH_JOINER) {
+            return false;
+        }
+        switch (Character.getType(previous)) {
+            case Character.NON_SPACING_MARK:
+            case Character.COMBINING_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+                return false;
+        }
+        return !(isRegionalIndicator(Character.codePointAt(text, offset))
+                && isRegionalIndicator(Character.codePointBefore(text, offset)));
+    }
+
+    private static boolean isRegionalIndicator(int codePoint) {
+        return codePoint >= FIRST_REGIONAL_INDICATOR && codePoint <= LAST_REGIONAL_INDICATOR;
+    }
+
+    private void setWindow(CharSequence text, int start, int end) {
+        iterator.set(text, start, end);
+        breakIterator.setText(iterator);
+    }
+}
@@ -0,0 +1,139 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+/**
+ * Keeps a running count of a piece of text using one or more {@link CounterStrategy}s, updating
+ * it from the edit ranges reported to a {@link android.text.TextWatcher} rather than recounting
+ * the whole text. Each edit costs time proportional to the size of the edit, not to the length
+ * of the text.
+ * <p>
+ * Each strategy has a slot, and all slots are updated in the same pass over each edit, with their
+ * state held in parallel arrays. Slot 0 is the primary strategy.
+ * <p>
+ * {@link #beforeTextChanged} and {@link #onTextChanged} must be forwarded from the watcher of
+ * the text being counted. If the counter ever loses track of the text (for example because it
+ * was attached after the text was set) it falls back to a full recount.
+ */
+public final class IncrementalCounter {
+
+    private CounterStrategy[] strategies;
+    private int[] counts;
+    private int[] pendingStarts;
+    private int[] pendingEnds;
+    private int[] pendingCounts;
+    private boolean hasPendingEdit;
+    private int length;
+
+    public IncrementalCounter(CounterStrategy strategy) {
+        setStrategies(new CounterStrategy[]{strategy}, null);
+    }
+
+    /**
+     * Sets the primary strategy used for counting and recounts {@code text}.
+     */
+    public void setStrategy(CounterStrategy strategy, CharSequence text) {
+        strategies[0] = strategy;
+        reset(text);
+    }
+
+    public CounterStrategy getStrategy() {
+        return strategies[0];
+    }
+
+    /**
+     * Sets the strategies to count with, one per slot, and recounts {@code text} with them. The
+     * first strategy becomes the primary strategy.
+     */
+    public void setStrategies(CounterStrategy[] strategies, CharSequence text) {
+        if (strategies.length == 0) {
+            throw new IllegalArgumentException("At least one strategy is required");
+        }
+        final int size = strategies.length;
+        this.strategies = strategies.clone();
+        counts = new int[size];
+        pendingStarts = new int[size];
+        pendingEnds = new int[size];
+        pendingCounts = new int[size];
+        reset(text);
+    }
+
+    /**
+     * Returns the number of strategy slots.
+     */
+    public int getStrategyCount() {
+        return strategies.length;
+    }
+
+    /**
+     * Discards any running state and recounts the whole of {@code text}.
+     */
+    public void reset(CharSequence text) {
+        length = text == null ? 0 : text.length();
+        for (int i = 0; i < strategies.length; i++) {
+            counts[i] = length == 0 ? 0 : strategies[i].count(text, 0, length);
+        }
+        hasPendingEdit = false;
+    }
+
+    /**
+     * Measures the region about to be replaced. Must be called from
+     * {@link android.text.TextWatcher#beforeTextChanged(CharSequence, int, int, int)}.
+     */
+    public void beforeTextChanged(CharSequence s, int start, int count, int after) {
+        if (s.length() != length) {
+            // We've lost track of the text, so onTextChanged will recount it
+            hasPendingEdit = false;
+            return;
+        }
+        final int end = start + count;
+        for (int i = 0; i < strategies.length; i++) {
+            final CounterStrategy strategy = strategies[i];
+            final int regionStart = strategy.getRegionStart(s, start);
+            final int regionEnd = strategy.getRegionEnd(s, end);
+            pendingStarts[i] = regionStart;
+            pendingEnds[i] = regionEnd;
+            pendingCounts[i] = strategy.count(s, regionStart, regionEnd);
+        }
+        hasPendingEdit = true;
+    }
+
+    /**
+     * Measures the region that has replaced the one seen in {@link #beforeTextChanged} and
+     * applies the difference. Must be called from
+     * {@link android.text.TextWatcher#onTextChanged(CharSequence, int, int, int)}.
+     */
+    public void onTextChanged(CharSequence s, int start, int before, int count) {
+        final int newLength = s.length();
+        if (!hasPendingEdit || newLength != length - before + count) {
+            reset(s);
+            return;
+        }
+        final int delta = count - before;
+        for (int i = 0; i < strategies.length; i++) {
+            counts[i] += strategies[i].count(s, pendingStarts[i], pendingEnds[i] + delta)
+                    - pendingCounts[i];
+        }
+        length = newLength;
+        hasPendingEdit = false;
+    }
+
+    /**
+     * Returns the current count of the text, using the primary strategy.
+     */
+    public int getCount() {
+        return counts[0];
+    }
+
+    /**
+     * Returns the current count of the text, using the strategy in the given slot.
+     */
+    public int getCount(int slot) {
+        return counts[slot];
+    }
+
+    /**
+     * Returns the length of the text last seen by this counter.
+     */
+    public int getLength() {
+        return length;
+    }
+}
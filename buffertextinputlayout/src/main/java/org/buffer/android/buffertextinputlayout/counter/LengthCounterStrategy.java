@@ -0,0 +1,28 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+/**
+ * Counts UTF-16 code units, matching {@link CharSequence#length()}. This is the default
+ * strategy.
+ */
+public final class LengthCounterStrategy implements CounterStrategy {
+
+    @Override
+    public int getRegionStart(CharSequence text, int offset) {
+        return offset;
+    }
+
+    @Override
+    public int getRegionEnd(CharSequence text, int offset) {
+        return offset;
+    }
+
+    @Override
+    public int getNextBoundary(CharSequence text, int offset) {
+        return offset + 1;
+    }
+
+    @Override
+    public int count(CharSequence text, int start, int end) {
+        return end - start;
+    }
+}
@@ -0,0 +1,507 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Counts text by giving each code point a weight, looked up from a table of code point ranges,
+ * optionally counting each URL as a fixed weight regardless of its length, and each emoji
+ * sequence as the weight of its first emoji. This matches how networks such as Twitter measure
+ * the length of a post; see {@link #twitter()}.
+ * <p>
+ * The ranges are precomputed into a two-level table of 256 code point blocks when the strategy
+ * is built, so looking up a weight is two array reads. Blocks which have a single weight
+ * throughout share no storage beyond one byte.
+ * <p>
+ * A run of URL characters longer than {@link #MAX_URL_LENGTH} is never counted as a URL. This
+ * bounds how far around an edit the regions reach, so typing in to a long unbroken token such
+ * as pasted base64 stays cheap. Whether a run is that long is the only thing the count of a
+ * region reads from the text outside of it, and no edit inside the region can change it.
+ * <p>
+ * Emoji sequences are joined by giving the skin tones, variation selectors, tags and ZWJs which
+ * follow an emoji, and any emoji joined on by a ZWJ, no weight. Whether they do is decided from
+ * the two code points before them, so counting a region also reads those, and regions reach two
+ * code points past an edit. This spares joining from scanning whole sequences. Keycap sequences
+ * aren't joined.
+ */
+public final class WeightedCounterStrategy implements CounterStrategy {
+
+    /**
+     * Used with {@link Builder#setUrlWeight(int)} to count URLs like any other text.
+     */
+    public static final int NO_URL_WEIGHT = -1;
+
+    /**
+     * The longest run of URL characters which can be counted as a URL, as in twitter-text.
+     */
+    public static final int MAX_URL_LENGTH = 4096;
+
+    private static final int BLOCK_SHIFT = 8;
+    private static final int BLOCK_SIZE = 1 << BLOCK_SHIFT;
+    private static final int BLOCK_MASK = BLOCK_SIZE - 1;
+    private static final int BLOCK_COUNT = (Character.MAX_CODE_POINT + 1) >> BLOCK_SHIFT;
+
+    private static final int TWITTER_DEFAULT_WEIGHT = 2;
+    private static final int TWITTER_URL_WEIGHT = 23;
+
+    private static final int ZERO_WIDTH_JOINER = 0x200D;
+    private static final int VARIATION_SELECTOR_16 = 0xFE0F;
+    private static final int FIRST_REGIONAL_INDICATOR = 0x1F1E6;
+    private static final int LAST_REGIONAL_INDICATOR = 0x1F1FF;
+    private static final int FIRST_SKIN_TONE = 0x1F3FB;
+    private static final int LAST_SKIN_TONE = 0x1F3FF;
+    private static final int FIRST_TAG = 0xE0020;
+    private static final int LAST_TAG = 0xE007F;
+    // Used for the code points before the start of the text
+    private static final int NONE = -1;
+
+    private final byte[] blockWeights;
+    private final byte[][] blocks;
+    private final int urlWeight;
+    private final boolean emojiSequencesJoined;
+
+    WeightedCounterStrategy(byte[] blockWeights, byte[][] blocks, int urlWeight,
+                            boolean emojiSequencesJoined) {
+        this.blockWeights = blockWeights;
+        this.blocks = blocks;
+        this.urlWeight = urlWeight;
+        this.emojiSequencesJoined = emojiSequencesJoined;
+    }
+
+    /**
+     * Returns a strategy which weights text in the same way as Twitter: Latin and common
+     * punctuation count as one, everything else (including CJK) counts as two, an emoji
+     * sequence such as a family or a flag counts as two, and each URL counts as 23. Use with a
+     * counter max length of 280.
+     * <p>
+     * Only URLs with an explicit http or https scheme are recognized. Twitter also matches
+     * host names without one against its list of top level domains, so text such as
+     * example.com is counted by its length here.
+     */
+    public static WeightedCounterStrategy twitter() {
+        return new Builder()
+                .setDefaultWeight(TWITTER_DEFAULT_WEIGHT)
+                .addRange(0x0000, 0x10FF, 1)
+                .addRange(0x2000, 0x200D, 1)
+                .addRange(0x2010, 0x201F, 1)
+                .addRange(0x2032, 0x2037, 1)
+                // So that a pair of them, a flag, counts as two
+                .addRange(FIRST_REGIONAL_INDICATOR, LAST_REGIONAL_INDICATOR, 1)
+                .setUrlWeight(TWITTER_URL_WEIGHT)
+                .setEmojiSequencesJoined(true)
+                .build();
+    }
+
+    /**
+     * Returns the weight of the given code point.
+     */
+    public int getWeight(int codePoint) {
+        final int index = codePoint >> BLOCK_SHIFT;
+        final byte[] block = blocks[index];
+        return block == null ? blockWeights[index] : block[codePoint & BLOCK_MASK];
+    }
+
+    /**
+     * Returns the weight that each URL counts as, or {@link #NO_URL_WEIGHT}.
+     */
+    public int getUrlWeight() {
+        return urlWeight;
+    }
+
+    /**
+     * Returns whether each emoji sequence counts as the weight of its first emoji.
+     */
+    public boolean areEmojiSequencesJoined() {
+        return emojiSequencesJoined;
+    }
+
+    @Override
+    public int getRegionStart(CharSequence text, int offset) {
+        if (urlWeight != NO_URL_WEIGHT) {
+            // Include the whole of any word we're in, as the edit may turn it in to a URL. If
+            // the word is longer than that, what we leave out stays in a run too long to be one
+            final int limit = Math.max(0, offset - MAX_URL_LENGTH - 1);
+            while (offset > limit && isUrlChar(text.charAt(offset - 1))) {
+                offset--;
+            }
+        }
+        if (offset > 0 && Character.isHighSurrogate(text.charAt(offset - 1))) {
+            offset--;
+        }
+        return offset;
+    }
+
+    @Override
+    public int getRegionEnd(CharSequence text, int offset) {
+        final int length = text.length();
+        if (emojiSequencesJoined) {
+            // The weights of the next two code points depend on what was edited, counting from
+            // the end of any code point the offset is in the middle of
+            if (offset < length && Character.isLowSurrogate(text.charAt(offset))) {
+                offset++;
+            }
+            for (int i = 0; i < 2 && offset < length; i++) {
+                offset += Character.charCount(Character.codePointAt(text, offset));
+            }
+        }
+        if (urlWeight != NO_URL_WEIGHT) {
+            final int limit = Math.min(length, offset + MAX_URL_LENGTH + 1);
+            while (offset < limit && isUrlChar(text.charAt(offset))) {
+                offset++;
+            }
+        }
+        if (offset < length && Character.isLowSurrogate(text.charAt(offset))) {
+            offset++;
+        }
+        return offset;
+    }
+
+    @Override
+    public int getNextBoundary(CharSequence text, int offset) {
+        final char c = text.charAt(offset);
+        if (urlWeight != NO_URL_WEIGHT && isUrlChar(c)) {
+            if (offset > 0 && isUrlChar(text.charAt(offset - 1))) {
+                // Boundaries only fall inside runs too long to be a URL, which count char by char
+                return offset + 1;
+            }
+            // A word may be a URL, so it can only be counted as a whole
+            final int limit = Math.min(text.length(), offset + MAX_URL_LENGTH + 1);
+            int wordEnd = offset + 1;
+            while (wordEnd < limit && isUrlChar(text.charAt(wordEnd))) {
+                wordEnd++;
+            }
+            return wordEnd - offset > MAX_URL_LENGTH ? offset + 1 : wordEnd;
+        }
+        if (!emojiSequencesJoined) {
+            return offset + Character.charCount(Character.codePointAt(text, offset));
+        }
+        // Keep any emoji sequence starting here whole
+        final int length = text.length();
+        int beforePrevious = codePointBefore(text, offset);
+        int previous = Character.codePointAt(text, offset);
+        offset += Character.charCount(previous);
+        while (offset < length) {
+            final int codePoint = Character.codePointAt(text, offset);
+            if (!isJoined(codePoint, previous, beforePrevious)) {
+                break;
+            }
+            beforePrevious = previous;
+            previous = codePoint;
+            offset += Character.charCount(codePoint);
+        }
+        return offset;
+    }
+
+    @Override
+    public int count(CharSequence text, int start, int end) {
+        int count = 0;
+        int i = start;
+        int previous = NONE;
+        int beforePrevious = NONE;
+        if (emojiSequencesJoined) {
+            previous = codePointBefore(text, start);
+            if (previous != NONE) {
+                beforePrevious = codePointBefore(text, start - Character.charCount(previous));
+            }
+        }
+        while (i < end) {
+            final char c = text.charAt(i);
+            if (urlWeight != NO_URL_WEIGHT && isUrlChar(c)) {
+                int wordEnd = i + 1;
+                while (wordEnd < end && isUrlChar(text.charAt(wordEnd))) {
+                    wordEnd++;
+                }
+                count += countWord(text, i, wordEnd, start, end);
+                i = wordEnd;
+                // URL chars never join on to an emoji, or let one join on to them
+                previous = c;
+                beforePrevious = c;
+                continue;
+            }
+            final int codePoint;
+            if (Character.isHighSurrogate(c) && i + 1 < end
+                    && Character.isLowSurrogate(text.charAt(i + 1))) {
+                codePoint = Character.toCodePoint(c, text.charAt(i + 1));
+                i += 2;
+            } else {
+                codePoint = c;
+                i++;
+            }
+            if (!emojiSequencesJoined || !isJoined(codePoint, previous, beforePrevious)) {
+                count += getWeight(codePoint);
+            }
+            beforePrevious = previous;
+            previous = codePoint;
+        }
+        return count;
+    }
+
+    /**
+     * Returns whether {@code codePoint} continues the emoji sequence before it, given the two
+     * code points before it, and so has no weight of its own.
+     */
+    private static boolean isJoined(int codePoint, int previous, int beforePrevious) {
+        if (codePoint == ZERO_WIDTH_JOINER || isEmojiModifier(codePoint)) {
+            return isEmoji(previous) || isEmojiModifier(previous);
+        }
+        return previous == ZERO_WIDTH_JOINER && isEmoji(codePoint)
+                && (isEmoji(beforePrevious) || isEmojiModifier(beforePrevious));
+    }
+
+    /**
+     * Returns whether {@code codePoint} is an emoji which can start a sequence. This is an
+     * approximation of the Extended_Pictographic property, which the platform doesn't expose.
+     */
+    private static boolean isEmoji(int codePoint) {
+        if (codePoint >= 0x1F000) {
+            return codePoint <= 0x1FAFF && !isEmojiModifier(codePoint)
+                    && !isRegionalIndicator(codePoint);
+        }
+        return (codePoint >= 0x2190 && codePoint <= 0x21FF)
+                || (codePoint >= 0x2300 && codePoint <= 0x23FF)
+                || (codePoint >= 0x25A0 && codePoint <= 0x27BF)
+                || (codePoint >= 0x2B00 && codePoint <= 0x2BFF)
+                || codePoint == 0x3030 || codePoint == 0x303D
+                || codePoint == 0x3297 || codePoint == 0x3299;
+    }
+
+    /**
+     * Returns whether {@code codePoint} modifies the emoji before it: a skin tone, the emoji
+     * variation selector or a tag.
+     */
+    private static boolean isEmojiModifier(int codePoint) {
+        return codePoint == VARIATION_SELECTOR_16
+                || (codePoint >= FIRST_SKIN_TONE && codePoint <= LAST_SKIN_TONE)
+                || (codePoint >= FIRST_TAG && codePoint <= LAST_TAG);
+    }
+
+    private static boolean isRegionalIndicator(int codePoint) {
+        return codePoint >= FIRST_REGIONAL_INDICATOR && codePoint <= LAST_REGIONAL_INDICATOR;
+    }
+
+    private static int codePointBefore(CharSequence text, int offset) {
+        return offset > 0 ? Character.codePointBefore(text, offset) : NONE;
+    }
+
+    /**
+     * Counts the run of URL characters from {@code start} to {@code end}, which may carry on
+     * past the region being counted, from {@code regionStart} to {@code regionEnd}.
+     */
+    private int countWord(CharSequence text, int start, int end, int regionStart,
+                          int regionEnd) {
+        int urlStart = start;
+        while (urlStart < end && isLeadingPunctuation(text.charAt(urlStart))) {
+            urlStart++;
+        }
+        int urlEnd = end;
+        while (urlEnd > urlStart && isTrailingPunctuation(text.charAt(urlEnd - 1))) {
+            urlEnd--;
+        }
+        if (urlStart < urlEnd && isUrl(text, urlStart, urlEnd)
+                && !isLongerThanUrl(text, start, end, regionStart, regionEnd)) {
+            return urlWeight + sumWeights(text, start, urlStart) + sumWeights(text, urlEnd, end);
+        }
+        return sumWeights(text, start, end);
+    }
+
+    /**
+     * Returns whether the run from {@code start} to {@code end}, including any part of it
+     * outside of the region, is too long to be a URL. Looks no further than that length.
+     */
+    private static boolean isLongerThanUrl(CharSequence text, int start, int end,
+                                           int regionStart, int regionEnd) {
+        int runLength = end - start;
+        if (start == regionStart) {
+            for (int i = start - 1; i >= 0 && runLength <= MAX_URL_LENGTH
+                    && isUrlChar(text.charAt(i)); i--) {
+                runLength++;
+            }
+        }
+        if (end == regionEnd) {
+            final int length = text.length();
+            for (int i = end; i < length && runLength <= MAX_URL_LENGTH
+                    && isUrlChar(text.charAt(i)); i++) {
+                runLength++;
+            }
+        }
+        return runLength > MAX_URL_LENGTH;
+    }
+
+    private int sumWeights(CharSequence text, int start, int end) {
+        // Only ever called for URL chars, which are all in the BMP
+        int sum = 0;
+        for (int i = start; i < end; i++) {
+            sum += getWeight(text.charAt(i));
+        }
+        return sum;
+    }
+
+    /**
+     * A simplified version of the URL matching done by the networks: an explicit http(s) scheme,
+     * then a host name made up of at least two labels ending in an alphabetic top level domain,
+     * optionally followed by a port and path. Host names without a scheme aren't matched, as
+     * telling e.g. example.com from file.txt needs the list of top level domains.
+     */
+    static boolean isUrl(CharSequence text, int start, int end) {
+        int hostStart = start;
+        if (regionMatches(text, start, end, "https://")) {
+            hostStart += 8;
+        } else if (regionMatches(text, start, end, "http://")) {
+            hostStart += 7;
+        } else {
+            return false;
+        }
+        int hostEnd = hostStart;
+        int lastDot = -1;
+        while (hostEnd < end) {
+            final char c = text.charAt(hostEnd);
+            if (c == '/' || c == '?' || c == '#' || c == ':') {
+                break;
+            } else if (c == '.') {
+                if (hostEnd == hostStart || hostEnd - 1 == lastDot) {
+                    // Empty label
+                    return false;
+                }
+                lastDot = hostEnd;
+            } else if (!Character.isLetterOrDigit(c) && c != '-') {
+                return false;
+            }
+            hostEnd++;
+        }
+        if (lastDot == -1) {
+            return false;
+        }
+        final int tldLength = hostEnd - lastDot - 1;
+        if (tldLength < 2) {
+            return false;
+        }
+        for (int i = lastDot + 1; i < hostEnd; i++) {
+            if (!Character.isLetter(text.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionMatches(CharSequence text, int start, int end, String prefix) {
+        final int length = prefix.length();
+        if (end - start <= length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (Character.toLowerCase(text.charAt(start + i)) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isUrlChar(char c) {
+        return c > ' ' && c < 0x7F;
+    }
+
+    private static boolean isLeadingPunctuation(char c) {
+        return c == '(' || c == '[' || c == '<' || c == '"' || c == '\'';
+    }
+
+    private static boolean isTrailingPunctuation(char c) {
+        return c == '.' || c == ',' || c == ':' || c == ';' || c == '!' || c == '?'
+                || c == ')' || c == ']' || c == '>' || c == '"' || c == '\'';
+    }
+
+    /**
+     * Builds a {@link WeightedCounterStrategy}. Ranges are applied in the order they are added,
+     * so a later range overrides an earlier one where they overlap.
+     */
+    public static final class Builder {
+
+        private int defaultWeight = 1;
+        private int urlWeight = NO_URL_WEIGHT;
+        private boolean emojiSequencesJoined;
+        private final List<int[]> ranges = new ArrayList<>();
+
+        /**
+         * Sets the weight of any code point not covered by a range. Defaults to 1.
+         */
+        public Builder setDefaultWeight(int weight) {
+            checkWeight(weight);
+            defaultWeight = weight;
+            return this;
+        }
+
+        /**
+         * Sets the weight of the code points from {@code start} to {@code end}, inclusive.
+         */
+        public Builder addRange(int start, int end, int weight) {
+            if (start < 0 || end > Character.MAX_CODE_POINT || start > end) {
+                throw new IllegalArgumentException("Invalid code point range " + start
+                        + " to " + end);
+            }
+            checkWeight(weight);
+            ranges.add(new int[]{start, end, weight});
+            return this;
+        }
+
+        /**
+         * Sets the fixed weight that each URL counts as, or {@link #NO_URL_WEIGHT} (the default)
+         * to count URLs like any other text.
+         */
+        public Builder setUrlWeight(int weight) {
+            if (weight != NO_URL_WEIGHT && weight < 0) {
+                throw new IllegalArgumentException("Invalid URL weight " + weight);
+            }
+            urlWeight = weight;
+            return this;
+        }
+
+        /**
+         * Sets whether each emoji sequence, i.e. an emoji with any skin tone, variation
+         * selector or tags, or several emoji joined by ZWJs, counts as the weight of its first
+         * emoji. Defaults to false, counting every code point.
+         */
+        public Builder setEmojiSequencesJoined(boolean joined) {
+            emojiSequencesJoined = joined;
+            return this;
+        }
+
+        public WeightedCounterStrategy build() {
+            final byte[] blockWeights = new byte[BLOCK_COUNT];
+            final byte[][] blocks = new byte[BLOCK_COUNT][];
+            final byte[] scratch = new byte[BLOCK_SIZE];
+            for (int block = 0; block < BLOCK_COUNT; block++) {
+                final int blockStart = block << BLOCK_SHIFT;
+                final int blockEnd = blockStart + BLOCK_MASK;
+                Arrays.fill(scratch, (byte) defaultWeight);
+                for (int[] range : ranges) {
+                    if (range[0] <= blockEnd && range[1] >= blockStart) {
+                        Arrays.fill(scratch, Math.max(range[0], blockStart) - blockStart,
+                                Math.min(range[1], blockEnd) - blockStart + 1, (byte) range[2]);
+                    }
+                }
+                if (isUniform(scratch)) {
+                    blockWeights[block] = scratch[0];
+                } else {
+                    blocks[block] = scratch.clone();
+                }
+            }
+            return new WeightedCounterStrategy(blockWeights, blocks, urlWeight,
+                    emojiSequencesJoined);
+        }
+
+        private static boolean isUniform(byte[] block) {
+            for (int i = 1; i < block.length; i++) {
+                if (block[i] != block[0]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private static void checkWeight(int weight) {
+            if (weight < 0 || weight > Byte.MAX_VALUE) {
+                throw new IllegalArgumentException("Invalid weight " + weight);
+            }
+        }
+    }
+}
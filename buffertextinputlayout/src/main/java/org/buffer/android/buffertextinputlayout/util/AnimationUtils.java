@@ -18,18 +18,22 @@ package org.buffer.android.buffertextinputlayout.util;
 import android.support.v4.view.animation.FastOutLinearInInterpolator;
 import android.support.v4.view.animation.FastOutSlowInInterpolator;
 import android.support.v4.view.animation.LinearOutSlowInInterpolator;
+import android.view.animation.AccelerateInterpolator;
 import android.view.animation.Interpolator;
 import android.view.animation.LinearInterpolator;
 
 public class AnimationUtils {
 
     public static final Interpolator LINEAR_INTERPOLATOR = new LinearInterpolator();
+    // The support library path interpolators are already backed by lookup tables
     public static final Interpolator FAST_OUT_SLOW_IN_INTERPOLATOR =
             new FastOutSlowInInterpolator();
     public static final Interpolator FAST_OUT_LINEAR_IN_INTERPOLATOR =
             new FastOutLinearInInterpolator();
     public static final Interpolator LINEAR_OUT_SLOW_IN_INTERPOLATOR =
             new LinearOutSlowInInterpolator();
+    public static final Interpolator ACCELERATE_INTERPOLATOR =
+            new LookupTableInterpolator(new AccelerateInterpolator());
 
     /**
      * Linear interpolation between {@code startValue} and {@code endValue} by {@code fraction}.
@@ -17,7 +17,6 @@ package org.buffer.android.buffertextinputlayout.util;
  */
 
 import android.content.res.ColorStateList;
-import android.content.res.TypedArray;
 import android.graphics.Bitmap;
 import android.graphics.Canvas;
 import android.graphics.Color;
@@ -30,7 +29,6 @@ import android.support.annotation.ColorInt;
 import android.support.v4.text.TextDirectionHeuristicsCompat;
 import android.support.v4.view.GravityCompat;
 import android.support.v4.view.ViewCompat;
-import android.support.v7.widget.TintTypedArray;
 import android.text.TextPaint;
 import android.text.TextUtils;
 import android.view.Gravity;
@@ -41,6 +39,8 @@ public final class CollapsingTextHelper {
     // Pre-JB-MR2 doesn't support HW accelerated canvas scaled text so we will workaround it
     // by using our own texture
     private static final boolean USE_SCALING_TEXTURE = Build.VERSION.SDK_INT < 18;
+    // The number of frames sampled in to the keyframe table, values are interpolated between them
+    private static final int KEYFRAME_COUNT = 61;
     private static final boolean DEBUG_DRAW = false;
     private static final Paint DEBUG_DRAW_PAINT;
 
@@ -58,6 +58,9 @@ public final class CollapsingTextHelper {
     private final Rect mExpandedBounds;
     private final Rect mCollapsedBounds;
     private final RectF mCurrentBounds;
+    // The area which the text was last drawn in to, and the area which it will next be drawn in
+    private final Rect mDrawnTextBounds;
+    private final RectF mTextBounds;
     private int mExpandedTextGravity = Gravity.CENTER_VERTICAL;
     private int mCollapsedTextGravity = Gravity.CENTER_VERTICAL;
     private float mExpandedTextSize = 15;
@@ -75,16 +78,24 @@ public final class CollapsingTextHelper {
     private Typeface mCurrentTypeface;
     private CharSequence mText;
     private CharSequence mTextToDraw;
+    private float mTextToDrawWidth;
     private boolean mIsRtl;
     private boolean mUseTexture;
+    private boolean mTextureRenderingEnabled;
+    private boolean mUsingCollapsedTextSize;
     private Bitmap mExpandedTitleTexture;
+    private Bitmap mCollapsedTitleTexture;
     private Paint mTexturePaint;
     private float mTextureAscent;
     private float mTextureDescent;
+    private float mCollapsedTextureAscent;
+    private float mCollapsedTextureDescent;
     private float mScale;
     private float mCurrentTextSize;
     private int[] mState;
     private boolean mBoundsChanged;
+    // Whether the bounds have changed, or a recalculation was skipped, since we last recalculated
+    private boolean mRecalculationNeeded = true;
     private final TextPaint mTextPaint;
     private Interpolator mPositionInterpolator;
     private Interpolator mTextSizeInterpolator;
@@ -92,6 +103,38 @@ public final class CollapsingTextHelper {
     private int mCollapsedShadowColor;
     private float mExpandedShadowRadius, mExpandedShadowDx, mExpandedShadowDy;
     private int mExpandedShadowColor;
+    private boolean mUseKeyframes;
+    private boolean mSuspended;
+    private boolean mInvalidationPending;
+    // Whether textures were returned to the pool since we were last drawn, so that a display
+    // list recorded with them may now draw another field's hint, or a recycled bitmap
+    private boolean mTexturesReleased;
+    private Keyframes mKeyframes;
+
+    /**
+     * The values for each frame of the animation between the expanded and collapsed states,
+     * sampled at evenly spaced fractions.
+     */
+    private static final class Keyframes {
+        final float[] boundsLeft = new float[KEYFRAME_COUNT];
+        final float[] boundsTop = new float[KEYFRAME_COUNT];
+        final float[] boundsRight = new float[KEYFRAME_COUNT];
+        final float[] boundsBottom = new float[KEYFRAME_COUNT];
+        final float[] drawX = new float[KEYFRAME_COUNT];
+        final float[] drawY = new float[KEYFRAME_COUNT];
+        final float[] textSize = new float[KEYFRAME_COUNT];
+        final int[] textColor = new int[KEYFRAME_COUNT];
+        final float[] shadowRadius = new float[KEYFRAME_COUNT];
+        final float[] shadowDx = new float[KEYFRAME_COUNT];
+        final float[] shadowDy = new float[KEYFRAME_COUNT];
+        final int[] shadowColor = new int[KEYFRAME_COUNT];
+        boolean hasShadow;
+        boolean valid;
+
+        static float sample(float[] values, int index, float weight) {
+            return values[index] + (weight * (values[index + 1] - values[index]));
+        }
+    }
 
     public CollapsingTextHelper(View view) {
         mView = view;
@@ -99,6 +142,8 @@ public final class CollapsingTextHelper {
         mCollapsedBounds = new Rect();
         mExpandedBounds = new Rect();
         mCurrentBounds = new RectF();
+        mDrawnTextBounds = new Rect();
+        mTextBounds = new RectF();
     }
 
     public void setTextSizeInterpolator(Interpolator interpolator) {
@@ -143,6 +188,7 @@ public final class CollapsingTextHelper {
         if (!rectEquals(mExpandedBounds, left, top, right, bottom)) {
             mExpandedBounds.set(left, top, right, bottom);
             mBoundsChanged = true;
+            mRecalculationNeeded = true;
             onBoundsChanged();
         }
     }
@@ -151,11 +197,13 @@ public final class CollapsingTextHelper {
         if (!rectEquals(mCollapsedBounds, left, top, right, bottom)) {
             mCollapsedBounds.set(left, top, right, bottom);
             mBoundsChanged = true;
+            mRecalculationNeeded = true;
             onBoundsChanged();
         }
     }
 
     private void onBoundsChanged() {
+        invalidateKeyframes();
         mDrawTitle = mCollapsedBounds.width() > 0 && mCollapsedBounds.height() > 0
                 && mExpandedBounds.width() > 0 && mExpandedBounds.height() > 0;
     }
@@ -183,73 +231,49 @@ public final class CollapsingTextHelper {
     }
 
     public void setCollapsedTextAppearance(int resId) {
-        TintTypedArray a = TintTypedArray.obtainStyledAttributes(mView.getContext(), resId,
-                android.support.v7.appcompat.R.styleable.TextAppearance);
-        if (a.hasValue(android.support.v7.appcompat.R.styleable.TextAppearance_android_textColor)) {
-            mCollapsedTextColor = a.getColorStateList(
-                    android.support.v7.appcompat.R.styleable.TextAppearance_android_textColor);
-        }
-        if (a.hasValue(android.support.v7.appcompat.R.styleable.TextAppearance_android_textSize)) {
-            mCollapsedTextSize = a.getDimensionPixelSize(
-                    android.support.v7.appcompat.R.styleable.TextAppearance_android_textSize,
-                    (int) mCollapsedTextSize);
-        }
-        mCollapsedShadowColor = a.getInt(
-                android.support.v7.appcompat.R.styleable.TextAppearance_android_shadowColor, 0);
-        mCollapsedShadowDx = a.getFloat(
-                android.support.v7.appcompat.R.styleable.TextAppearance_android_shadowDx, 0);
-        mCollapsedShadowDy = a.getFloat(
-                android.support.v7.appcompat.R.styleable.TextAppearance_android_shadowDy, 0);
-        mCollapsedShadowRadius = a.getFloat(
-                android.support.v7.appcompat.R.styleable.TextAppearance_android_shadowRadius, 0);
-        a.recycle();
+        final TextAppearanceCache.Appearance appearance =
+                TextAppearanceCache.get(mView.getContext(), resId);
+        if (appearance == null) {
+            return;
+        }
+        if (appearance.getTextColor() != null) {
+            mCollapsedTextColor = appearance.getTextColor();
+        }
+        if (appearance.hasTextSize()) {
+            mCollapsedTextSize = appearance.getTextSize();
+        }
+        mCollapsedShadowColor = appearance.getShadowColor();
+        mCollapsedShadowDx = appearance.getShadowDx();
+        mCollapsedShadowDy = appearance.getShadowDy();
+        mCollapsedShadowRadius = appearance.getShadowRadius();
         if (Build.VERSION.SDK_INT >= 16) {
-            mCollapsedTypeface = readFontFamilyTypeface(resId);
+            mCollapsedTypeface = appearance.getFontFamilyTypeface();
         }
         recalculate();
     }
 
     public void setExpandedTextAppearance(int resId) {
-        TintTypedArray a = TintTypedArray.obtainStyledAttributes(mView.getContext(), resId,
-                android.support.v7.appcompat.R.styleable.TextAppearance);
-        if (a.hasValue(android.support.v7.appcompat.R.styleable.TextAppearance_android_textColor)) {
-            mExpandedTextColor = a.getColorStateList(
-                    android.support.v7.appcompat.R.styleable.TextAppearance_android_textColor);
-        }
-        if (a.hasValue(android.support.v7.appcompat.R.styleable.TextAppearance_android_textSize)) {
-            mExpandedTextSize = a.getDimensionPixelSize(
-                    android.support.v7.appcompat.R.styleable.TextAppearance_android_textSize,
-                    (int) mExpandedTextSize);
-        }
-        mExpandedShadowColor = a.getInt(
-                android.support.v7.appcompat.R.styleable.TextAppearance_android_shadowColor, 0);
-        mExpandedShadowDx = a.getFloat(
-                android.support.v7.appcompat.R.styleable.TextAppearance_android_shadowDx, 0);
-        mExpandedShadowDy = a.getFloat(
-                android.support.v7.appcompat.R.styleable.TextAppearance_android_shadowDy, 0);
-        mExpandedShadowRadius = a.getFloat(
-                android.support.v7.appcompat.R.styleable.TextAppearance_android_shadowRadius, 0);
-        a.recycle();
+        final TextAppearanceCache.Appearance appearance =
+                TextAppearanceCache.get(mView.getContext(), resId);
+        if (appearance == null) {
+            return;
+        }
+        if (appearance.getTextColor() != null) {
+            mExpandedTextColor = appearance.getTextColor();
+        }
+        if (appearance.hasTextSize()) {
+            mExpandedTextSize = appearance.getTextSize();
+        }
+        mExpandedShadowColor = appearance.getShadowColor();
+        mExpandedShadowDx = appearance.getShadowDx();
+        mExpandedShadowDy = appearance.getShadowDy();
+        mExpandedShadowRadius = appearance.getShadowRadius();
         if (Build.VERSION.SDK_INT >= 16) {
-            mExpandedTypeface = readFontFamilyTypeface(resId);
+            mExpandedTypeface = appearance.getFontFamilyTypeface();
         }
         recalculate();
     }
 
-    private Typeface readFontFamilyTypeface(int resId) {
-        final TypedArray a = mView.getContext().obtainStyledAttributes(resId,
-                new int[]{android.R.attr.fontFamily});
-        try {
-            final String family = a.getString(0);
-            if (family != null) {
-                return Typeface.create(family, Typeface.NORMAL);
-            }
-        } finally {
-            a.recycle();
-        }
-        return null;
-    }
-
     public void setCollapsedTypeface(Typeface typeface) {
         if (mCollapsedTypeface != typeface) {
             mCollapsedTypeface = typeface;
@@ -293,14 +317,23 @@ public final class CollapsingTextHelper {
     }
 
     public final boolean setState(final int[] state) {
+        final int[] previousState = mState;
         mState = state;
-        if (isStateful()) {
+        if (isStateful() && (previousState == null
+                || hasColorChanged(mCollapsedTextColor, previousState, state)
+                || hasColorChanged(mExpandedTextColor, previousState, state))) {
             recalculate();
             return true;
         }
         return false;
     }
 
+    private static boolean hasColorChanged(ColorStateList colors, int[] previousState,
+                                           int[] state) {
+        return colors != null && colors.isStateful()
+                && colors.getColorForState(previousState, 0) != colors.getColorForState(state, 0);
+    }
+
     private boolean isStateful() {
         return (mCollapsedTextColor != null && mCollapsedTextColor.isStateful())
                 || (mExpandedTextColor != null && mExpandedTextColor.isStateful());
@@ -322,7 +355,58 @@ public final class CollapsingTextHelper {
         calculateOffsets(mExpandedFraction);
     }
 
+    /**
+     * Set whether the frames of the animation between the expanded and collapsed states are
+     * sampled from a table, which is computed once whenever the bounds, text appearance or
+     * state change. This is worthwhile when the hint is animated many times without any of
+     * those changing.
+     */
+    public void setUseKeyframes(boolean useKeyframes) {
+        if (mUseKeyframes != useKeyframes) {
+            mUseKeyframes = useKeyframes;
+            invalidateKeyframes();
+            calculateCurrentOffsets();
+        }
+    }
+
+    public boolean isUsingKeyframes() {
+        return mUseKeyframes;
+    }
+
+    /**
+     * Set whether the text is rasterized once at the collapsed and expanded sizes, with the
+     * animation drawn by scaling those bitmaps rather than by laying out the glyphs on every
+     * frame. The bitmaps only hold coverage so the text color can still change, but text with
+     * a shadow is always drawn as text.
+     */
+    public void setTextureRenderingEnabled(boolean enabled) {
+        if (mTextureRenderingEnabled != enabled) {
+            mTextureRenderingEnabled = enabled;
+            clearTexture();
+            recalculate();
+        }
+    }
+
+    public boolean isTextureRenderingEnabled() {
+        return mTextureRenderingEnabled;
+    }
+
+    private boolean canUseTextureRendering() {
+        return mTextureRenderingEnabled
+                && mExpandedShadowRadius == 0 && mCollapsedShadowRadius == 0;
+    }
+
+    private void invalidateKeyframes() {
+        if (mKeyframes != null) {
+            mKeyframes.valid = false;
+        }
+    }
+
     private void calculateOffsets(final float fraction) {
+        if (mUseKeyframes) {
+            calculateOffsetsFromKeyframes(fraction);
+            return;
+        }
         interpolateBounds(fraction);
         mCurrentDrawX = lerp(mExpandedDrawX, mCollapsedDrawX, fraction,
                 mPositionInterpolator);
@@ -343,7 +427,152 @@ public final class CollapsingTextHelper {
                 lerp(mExpandedShadowDx, mCollapsedShadowDx, fraction, null),
                 lerp(mExpandedShadowDy, mCollapsedShadowDy, fraction, null),
                 blendColors(mExpandedShadowColor, mCollapsedShadowColor, fraction));
-        ViewCompat.postInvalidateOnAnimation(mView);
+        invalidateText();
+    }
+
+    private void calculateOffsetsFromKeyframes(final float fraction) {
+        if (mKeyframes == null) {
+            mKeyframes = new Keyframes();
+        }
+        final Keyframes keyframes = mKeyframes;
+        if (!keyframes.valid) {
+            computeKeyframes(keyframes);
+        }
+        final float position = fraction * (KEYFRAME_COUNT - 1);
+        final int index = Math.min((int) position, KEYFRAME_COUNT - 2);
+        final float weight = position - index;
+        mCurrentBounds.left = Keyframes.sample(keyframes.boundsLeft, index, weight);
+        mCurrentBounds.top = Keyframes.sample(keyframes.boundsTop, index, weight);
+        mCurrentBounds.right = Keyframes.sample(keyframes.boundsRight, index, weight);
+        mCurrentBounds.bottom = Keyframes.sample(keyframes.boundsBottom, index, weight);
+        mCurrentDrawX = Keyframes.sample(keyframes.drawX, index, weight);
+        mCurrentDrawY = Keyframes.sample(keyframes.drawY, index, weight);
+        setInterpolatedTextSize(Keyframes.sample(keyframes.textSize, index, weight));
+        // Colors aren't interpolated, the closest frame is close enough
+        final int closest = weight < 0.5f ? index : index + 1;
+        mTextPaint.setColor(keyframes.textColor[closest]);
+        if (keyframes.hasShadow) {
+            mTextPaint.setShadowLayer(
+                    Keyframes.sample(keyframes.shadowRadius, index, weight),
+                    Keyframes.sample(keyframes.shadowDx, index, weight),
+                    Keyframes.sample(keyframes.shadowDy, index, weight),
+                    keyframes.shadowColor[closest]);
+        }
+        invalidateText();
+    }
+
+    /**
+     * Set whether the view isn't currently shown to the user. While suspended, invalidations
+     * are dropped and textures aren't built, and any pending invalidation is posted once the
+     * view is resumed.
+     */
+    public void setSuspended(boolean suspended) {
+        if (mSuspended != suspended) {
+            mSuspended = suspended;
+            if (!suspended) {
+                invalidateReleasedTextures();
+            }
+            if (!suspended && mUseTexture && !canUseTextureRendering()) {
+                // draw() doesn't build the scaled expanded texture, and any we have may be from
+                // before the text changed, so rebuild it now
+                clearTexture();
+                ensureExpandedTexture();
+                mInvalidationPending = false;
+                // Building the texture moved us to the expanded state, so move back, which
+                // invalidates the text too
+                calculateCurrentOffsets();
+            } else if (!suspended && mInvalidationPending) {
+                mInvalidationPending = false;
+                invalidateText();
+            }
+        }
+    }
+
+    public boolean isSuspended() {
+        return mSuspended;
+    }
+
+    /**
+     * Invalidates the area which the text was last drawn in, along with the area which it will
+     * now be drawn in, rather than the whole view.
+     */
+    private void invalidateText() {
+        if (mTextToDraw != null && mDrawTitle) {
+            final float scale = mScale;
+            // Allow for any shadow, plus a pixel either side for anti-aliasing
+            final float margin = 1f + Math.max(mExpandedShadowRadius, mCollapsedShadowRadius)
+                    + Math.max(Math.max(Math.abs(mExpandedShadowDx), Math.abs(mCollapsedShadowDx)),
+                    Math.max(Math.abs(mExpandedShadowDy), Math.abs(mCollapsedShadowDy)));
+            mTextBounds.set(mCurrentDrawX - margin,
+                    mCurrentDrawY + (mTextPaint.ascent() * scale) - margin,
+                    mCurrentDrawX + (mTextToDrawWidth * scale) + margin,
+                    mCurrentDrawY + (mTextPaint.descent() * scale) + margin);
+        } else {
+            mTextBounds.setEmpty();
+        }
+        if (mSuspended) {
+            // We're not shown, so just remember to invalidate once we are
+            mInvalidationPending = true;
+            return;
+        }
+        final Rect dirty = mDrawnTextBounds;
+        if (!mTextBounds.isEmpty()) {
+            dirty.union((int) Math.floor(mTextBounds.left), (int) Math.floor(mTextBounds.top),
+                    (int) Math.ceil(mTextBounds.right), (int) Math.ceil(mTextBounds.bottom));
+        }
+        if (!dirty.isEmpty()) {
+            ViewCompat.postInvalidateOnAnimation(mView,
+                    dirty.left, dirty.top, dirty.right, dirty.bottom);
+        }
+        if (mTextBounds.isEmpty()) {
+            dirty.setEmpty();
+        } else {
+            mTextBounds.roundOut(dirty);
+        }
+    }
+
+    private void computeKeyframes(Keyframes keyframes) {
+        final int expandedTextColor = getCurrentExpandedTextColor();
+        final int collapsedTextColor = getCurrentCollapsedTextColor();
+        final boolean blendTextColor = mCollapsedTextColor != mExpandedTextColor;
+        keyframes.hasShadow = mExpandedShadowRadius != 0 || mCollapsedShadowRadius != 0;
+        if (!keyframes.hasShadow) {
+            // No frame sets a shadow, so clear any left from before
+            mTextPaint.clearShadowLayer();
+        }
+        for (int i = 0; i < KEYFRAME_COUNT; i++) {
+            final float fraction = i == KEYFRAME_COUNT - 1 ? 1f : i / (float) (KEYFRAME_COUNT - 1);
+            final float positionFraction = mPositionInterpolator != null
+                    ? mPositionInterpolator.getInterpolation(fraction) : fraction;
+            keyframes.boundsLeft[i] = AnimationUtils.lerp(mExpandedBounds.left,
+                    mCollapsedBounds.left, positionFraction);
+            keyframes.boundsTop[i] = AnimationUtils.lerp(mExpandedDrawY, mCollapsedDrawY,
+                    positionFraction);
+            keyframes.boundsRight[i] = AnimationUtils.lerp(mExpandedBounds.right,
+                    mCollapsedBounds.right, positionFraction);
+            keyframes.boundsBottom[i] = AnimationUtils.lerp(mExpandedBounds.bottom,
+                    mCollapsedBounds.bottom, positionFraction);
+            keyframes.drawX[i] = AnimationUtils.lerp(mExpandedDrawX, mCollapsedDrawX,
+                    positionFraction);
+            keyframes.drawY[i] = AnimationUtils.lerp(mExpandedDrawY, mCollapsedDrawY,
+                    positionFraction);
+            keyframes.textSize[i] = lerp(mExpandedTextSize, mCollapsedTextSize, fraction,
+                    mTextSizeInterpolator);
+            keyframes.textColor[i] = blendTextColor
+                    ? blendColors(expandedTextColor, collapsedTextColor, fraction)
+                    : collapsedTextColor;
+            if (keyframes.hasShadow) {
+                keyframes.shadowRadius[i] = AnimationUtils.lerp(mExpandedShadowRadius,
+                        mCollapsedShadowRadius, fraction);
+                keyframes.shadowDx[i] = AnimationUtils.lerp(mExpandedShadowDx,
+                        mCollapsedShadowDx, fraction);
+                keyframes.shadowDy[i] = AnimationUtils.lerp(mExpandedShadowDy,
+                        mCollapsedShadowDy, fraction);
+                keyframes.shadowColor[i] = blendColors(mExpandedShadowColor,
+                        mCollapsedShadowColor, fraction);
+            }
+        }
+        keyframes.valid = true;
     }
 
     @ColorInt
@@ -447,14 +676,29 @@ public final class CollapsingTextHelper {
     }
 
     public void draw(Canvas canvas) {
+        // The view's display list is being recorded again, so it no longer holds old textures
+        mTexturesReleased = false;
+        if (mTextBounds.isEmpty() || canvas.quickReject(mTextBounds, Canvas.EdgeType.AA)) {
+            // There's nothing to draw, or it's outside of the area being redrawn
+            return;
+        }
         final int saveCount = canvas.save();
         if (mTextToDraw != null && mDrawTitle) {
             float x = mCurrentDrawX;
             float y = mCurrentDrawY;
-            final boolean drawTexture = mUseTexture && mExpandedTitleTexture != null;
+            if (mUseTexture && canUseTextureRendering()) {
+                // Our textures may have been released while we were detached
+                ensureCurrentTexture();
+            }
+            final Bitmap texture = !mUseTexture ? null
+                    : mUsingCollapsedTextSize ? mCollapsedTitleTexture : mExpandedTitleTexture;
+            final boolean drawTexture = texture != null;
             final float ascent;
             final float descent;
-            if (drawTexture) {
+            if (drawTexture && texture == mCollapsedTitleTexture) {
+                ascent = mCollapsedTextureAscent * mScale;
+                descent = mCollapsedTextureDescent * mScale;
+            } else if (drawTexture) {
                 ascent = mTextureAscent * mScale;
                 descent = mTextureDescent * mScale;
             } else {
@@ -474,7 +718,11 @@ public final class CollapsingTextHelper {
             }
             if (drawTexture) {
                 // If we should use a texture, draw it instead of text
-                canvas.drawBitmap(mExpandedTitleTexture, x, y, mTexturePaint);
+                if (texture.getConfig() == Bitmap.Config.ALPHA_8) {
+                    // Coverage only textures are drawn in the paint's color
+                    mTexturePaint.setColor(mTextPaint.getColor());
+                }
+                canvas.drawBitmap(texture, x, y, mTexturePaint);
             } else {
                 canvas.drawText(mTextToDraw, 0, mTextToDraw.length(), x, y, mTextPaint);
             }
@@ -482,9 +730,8 @@ public final class CollapsingTextHelper {
         canvas.restoreToCount(saveCount);
     }
 
-    private boolean calculateIsRtl(CharSequence text) {
-        final boolean defaultIsRtl = ViewCompat.getLayoutDirection(mView)
-                == ViewCompat.LAYOUT_DIRECTION_RTL;
+    private static boolean calculateIsRtl(CharSequence text, int layoutDirection) {
+        final boolean defaultIsRtl = layoutDirection == ViewCompat.LAYOUT_DIRECTION_RTL;
         return (defaultIsRtl
                 ? TextDirectionHeuristicsCompat.FIRSTSTRONG_RTL
                 : TextDirectionHeuristicsCompat.FIRSTSTRONG_LTR).isRtl(text, 0, text.length());
@@ -492,13 +739,20 @@ public final class CollapsingTextHelper {
 
     private void setInterpolatedTextSize(float textSize) {
         calculateUsingTextSize(textSize);
-        // Use our texture if the scale isn't 1.0
-        mUseTexture = USE_SCALING_TEXTURE && mScale != 1f;
-        if (mUseTexture) {
-            // Make sure we have an expanded texture if needed
-            ensureExpandedTexture();
+        if (canUseTextureRendering()) {
+            mUseTexture = true;
+            if (!mSuspended) {
+                // Otherwise draw() will build it when we're shown again
+                ensureCurrentTexture();
+            }
+        } else {
+            // Use our texture if the scale isn't 1.0
+            mUseTexture = USE_SCALING_TEXTURE && mScale != 1f;
+            if (mUseTexture && !mSuspended) {
+                // Make sure we have an expanded texture if needed
+                ensureExpandedTexture();
+            }
         }
-        ViewCompat.postInvalidateOnAnimation(mView);
     }
 
     private void calculateUsingTextSize(final float textSize) {
@@ -511,6 +765,7 @@ public final class CollapsingTextHelper {
         if (isClose(textSize, mCollapsedTextSize)) {
             newTextSize = mCollapsedTextSize;
             mScale = 1f;
+            mUsingCollapsedTextSize = true;
             if (mCurrentTypeface != mCollapsedTypeface) {
                 mCurrentTypeface = mCollapsedTypeface;
                 updateDrawText = true;
@@ -518,6 +773,7 @@ public final class CollapsingTextHelper {
             availableWidth = collapsedWidth;
         } else {
             newTextSize = mExpandedTextSize;
+            mUsingCollapsedTextSize = false;
             if (mCurrentTypeface != mExpandedTypeface) {
                 mCurrentTypeface = mExpandedTypeface;
                 updateDrawText = true;
@@ -552,14 +808,57 @@ public final class CollapsingTextHelper {
             mTextPaint.setTextSize(mCurrentTextSize);
             mTextPaint.setTypeface(mCurrentTypeface);
             // Use linear text scaling if we're scaling the canvas
-            mTextPaint.setLinearText(mScale != 1f);
+            final boolean linearText = mScale != 1f;
+            mTextPaint.setLinearText(linearText);
             // If we don't currently have text to draw, or the text size has changed, ellipsize...
-            final CharSequence title = TextUtils.ellipsize(mText, mTextPaint,
-                    availableWidth, TextUtils.TruncateAt.END);
-            if (!TextUtils.equals(title, mTextToDraw)) {
-                mTextToDraw = title;
-                mIsRtl = calculateIsRtl(mTextToDraw);
+            final int layoutDirection = ViewCompat.getLayoutDirection(mView);
+            if (mText instanceof String) {
+                // Plain hints are very likely to be shared with other fields, so go via the cache
+                final String text = (String) mText;
+                HintLayoutCache.Entry entry = HintLayoutCache.get(text, mCurrentTypeface,
+                        mCurrentTextSize, availableWidth, layoutDirection, linearText);
+                if (entry == null) {
+                    final CharSequence title = TextUtils.ellipsize(text, mTextPaint,
+                            availableWidth, TextUtils.TruncateAt.END);
+                    entry = new HintLayoutCache.Entry(title,
+                            calculateIsRtl(title, layoutDirection));
+                    HintLayoutCache.put(text, mCurrentTypeface, mCurrentTextSize,
+                            availableWidth, layoutDirection, linearText, entry);
+                }
+                mTextToDraw = entry.text;
+                mIsRtl = entry.isRtl;
+            } else {
+                final CharSequence title = TextUtils.ellipsize(mText, mTextPaint,
+                        availableWidth, TextUtils.TruncateAt.END);
+                if (!TextUtils.equals(title, mTextToDraw)) {
+                    mTextToDraw = title;
+                    mIsRtl = calculateIsRtl(mTextToDraw, layoutDirection);
+                }
             }
+            // Measured here, rather than on every frame, so that we know the area to invalidate
+            mTextToDrawWidth = mTextToDraw != null
+                    ? mTextPaint.measureText(mTextToDraw, 0, mTextToDraw.length()) : 0;
+        }
+    }
+
+    private void ensureCurrentTexture() {
+        // The text paint is already set up for the size which we're drawing at
+        if (mUsingCollapsedTextSize) {
+            if (mCollapsedTitleTexture != null || mCollapsedBounds.isEmpty()
+                    || TextUtils.isEmpty(mTextToDraw)) {
+                return;
+            }
+            mCollapsedTextureAscent = mTextPaint.ascent();
+            mCollapsedTextureDescent = mTextPaint.descent();
+            mCollapsedTitleTexture = createTextTexture(true);
+        } else {
+            if (mExpandedTitleTexture != null || mExpandedBounds.isEmpty()
+                    || TextUtils.isEmpty(mTextToDraw)) {
+                return;
+            }
+            mTextureAscent = mTextPaint.ascent();
+            mTextureDescent = mTextPaint.descent();
+            mExpandedTitleTexture = createTextTexture(true);
         }
     }
 
@@ -571,29 +870,61 @@ public final class CollapsingTextHelper {
         calculateOffsets(0f);
         mTextureAscent = mTextPaint.ascent();
         mTextureDescent = mTextPaint.descent();
+        mExpandedTitleTexture = createTextTexture(false);
+    }
+
+    /**
+     * Rasterizes the text to draw, using the current text paint, in to a bitmap from the shared
+     * pool. If {@code coverageOnly} is true then only the alpha of the text is kept, so that it
+     * can be drawn in any color.
+     */
+    private Bitmap createTextTexture(boolean coverageOnly) {
         final int w = Math.round(mTextPaint.measureText(mTextToDraw, 0, mTextToDraw.length()));
-        final int h = Math.round(mTextureDescent - mTextureAscent);
+        final int h = Math.round(mTextPaint.descent() - mTextPaint.ascent());
         if (w <= 0 || h <= 0) {
-            return; // If the width or height are 0, return
+            return null; // If the width or height are 0, return
+        }
+        final Bitmap texture = HintTexturePool.acquire(w, h,
+                coverageOnly ? Bitmap.Config.ALPHA_8 : Bitmap.Config.ARGB_8888);
+        Canvas c = new Canvas(texture);
+        if (coverageOnly) {
+            final int color = mTextPaint.getColor();
+            mTextPaint.setColor(Color.BLACK);
+            c.drawText(mTextToDraw, 0, mTextToDraw.length(), 0, h - mTextPaint.descent(),
+                    mTextPaint);
+            mTextPaint.setColor(color);
+        } else {
+            c.drawText(mTextToDraw, 0, mTextToDraw.length(), 0, h - mTextPaint.descent(),
+                    mTextPaint);
         }
-        mExpandedTitleTexture = Bitmap.createBitmap(w, h, Bitmap.Config.ARGB_8888);
-        Canvas c = new Canvas(mExpandedTitleTexture);
-        c.drawText(mTextToDraw, 0, mTextToDraw.length(), 0, h - mTextPaint.descent(), mTextPaint);
         if (mTexturePaint == null) {
             // Make sure we have a paint
             mTexturePaint = new Paint(Paint.ANTI_ALIAS_FLAG | Paint.FILTER_BITMAP_FLAG);
         }
+        return texture;
     }
 
     public void recalculate() {
+        invalidateKeyframes();
         if (mView.getHeight() > 0 && mView.getWidth() > 0) {
             // If we've already been laid out, calculate everything now otherwise we'll wait
             // until a layout
             calculateBaseOffsets();
             calculateCurrentOffsets();
+            mRecalculationNeeded = false;
+        } else {
+            mRecalculationNeeded = true;
         }
     }
 
+    /**
+     * Returns whether the bounds have changed, or a call to {@link #recalculate()} had to wait
+     * for a layout, since the text was last recalculated.
+     */
+    public boolean isRecalculationNeeded() {
+        return mRecalculationNeeded;
+    }
+
     /**
      * Set the title to display
      *
@@ -612,11 +943,39 @@ public final class CollapsingTextHelper {
         return mText;
     }
 
+    /**
+     * Returns any rasterized text to the shared pool, e.g. when the view is detached. The text
+     * will be rasterized again when it is next drawn.
+     */
+    public void releaseTextures() {
+        if (mExpandedTitleTexture != null || mCollapsedTitleTexture != null) {
+            mTexturesReleased = true;
+            mInvalidationPending = true;
+        }
+        clearTexture();
+    }
+
+    /**
+     * Invalidates the whole view if textures have been released since it was last drawn. The
+     * view may otherwise be shown again from a display list which still draws the released
+     * bitmaps, e.g. when it is re-attached without being redrawn.
+     */
+    public void invalidateReleasedTextures() {
+        if (mTexturesReleased && !mSuspended) {
+            mTexturesReleased = false;
+            mView.invalidate();
+        }
+    }
+
     private void clearTexture() {
         if (mExpandedTitleTexture != null) {
-            mExpandedTitleTexture.recycle();
+            HintTexturePool.release(mExpandedTitleTexture);
             mExpandedTitleTexture = null;
         }
+        if (mCollapsedTitleTexture != null) {
+            HintTexturePool.release(mCollapsedTitleTexture);
+            mCollapsedTitleTexture = null;
+        }
     }
 
     /**
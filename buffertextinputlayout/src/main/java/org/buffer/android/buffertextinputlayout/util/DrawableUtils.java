@@ -17,6 +17,7 @@ package org.buffer.android.buffertextinputlayout.util;
 
 import android.graphics.drawable.Drawable;
 import android.graphics.drawable.DrawableContainer;
+import android.support.v4.util.SimpleArrayMap;
 import android.util.Log;
 
 import java.lang.reflect.InvocationTargetException;
@@ -27,14 +28,25 @@ public class DrawableUtils {
     private static final String LOG_TAG = DrawableUtils.class.getSimpleName();
     private static Method setConstantStateMethod;
     private static boolean setConstantStateMethodFetched;
+    // The drawable classes which setConstantState() has failed for, so we don't retry them
+    private static final SimpleArrayMap<Class<?>, Boolean> sUnsupportedContainerClasses =
+            new SimpleArrayMap<>();
 
     private DrawableUtils() {
     }
 
     public static boolean setContainerConstantState(DrawableContainer drawable,
                                              Drawable.ConstantState constantState) {
+        final Class<?> drawableClass = drawable.getClass();
+        if (sUnsupportedContainerClasses.containsKey(drawableClass)) {
+            return false;
+        }
         // We can use getDeclaredMethod() on v9+
-        return setContainerConstantStateV9(drawable, constantState);
+        final boolean set = setContainerConstantStateV9(drawable, constantState);
+        if (!set) {
+            sUnsupportedContainerClasses.put(drawableClass, Boolean.TRUE);
+        }
+        return set;
     }
 
     private static boolean setContainerConstantStateV9(DrawableContainer drawable,
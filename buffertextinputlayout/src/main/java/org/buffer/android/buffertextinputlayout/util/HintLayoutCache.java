@@ -0,0 +1,119 @@
+package org.buffer.android.buffertextinputlayout.util;
+
+import android.graphics.Typeface;
+import android.support.v4.util.LruCache;
+
+/**
+ * A process wide cache of the ellipsized hint text and its direction, shared between every
+ * {@link CollapsingTextHelper}. Forms tend to have many fields with the same hints, typefaces
+ * and widths, so this saves each of them from ellipsizing and running the direction heuristic
+ * at every layout and at the start and end of every animation.
+ * <p>
+ * Only plain String hints are cached, as the result of ellipsizing styled text depends on its
+ * spans. This must only be used from the main thread.
+ */
+public final class HintLayoutCache {
+
+    private static final int MAX_SIZE = 64;
+    private static final LruCache<Key, Entry> CACHE = new LruCache<>(MAX_SIZE);
+    // Reused for lookups so that a hit doesn't allocate
+    private static final Key LOOKUP_KEY = new Key();
+
+    private HintLayoutCache() {
+    }
+
+    static final class Entry {
+        final CharSequence text;
+        final boolean isRtl;
+
+        Entry(CharSequence text, boolean isRtl) {
+            this.text = text;
+            this.isRtl = isRtl;
+        }
+    }
+
+    static Entry get(String text, Typeface typeface, float textSize, float availableWidth,
+                     int layoutDirection, boolean linearText) {
+        LOOKUP_KEY.set(text, typeface, textSize, availableWidth, layoutDirection, linearText);
+        return CACHE.get(LOOKUP_KEY);
+    }
+
+    static void put(String text, Typeface typeface, float textSize, float availableWidth,
+                    int layoutDirection, boolean linearText, Entry entry) {
+        final Key key = new Key();
+        key.set(text, typeface, textSize, availableWidth, layoutDirection, linearText);
+        CACHE.put(key, entry);
+    }
+
+    /**
+     * Returns the number of lookups which were found in the cache.
+     */
+    public static int hitCount() {
+        return CACHE.hitCount();
+    }
+
+    /**
+     * Returns the number of lookups which weren't found in the cache.
+     */
+    public static int missCount() {
+        return CACHE.missCount();
+    }
+
+    /**
+     * Empties the cache, e.g. when the system font scale or fonts change.
+     */
+    public static void clear() {
+        CACHE.evictAll();
+    }
+
+    private static final class Key {
+        private String text;
+        private Typeface typeface;
+        private float textSize;
+        private float availableWidth;
+        private int layoutDirection;
+        private boolean linearText;
+
+        Key() {
+        }
+
+        void set(String text, Typeface typeface, float textSize, float availableWidth,
+                 int layoutDirection, boolean linearText) {
+            this.text = text;
+            this.typeface = typeface;
+            this.textSize = textSize;
+            this.availableWidth = availableWidth;
+            this.layoutDirection = layoutDirection;
+            this.linearText = linearText;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            final Key other = (Key) o;
+            return textSize == other.textSize
+                    && availableWidth == other.availableWidth
+                    && layoutDirection == other.layoutDirection
+                    && linearText == other.linearText
+                    && text.equals(other.text)
+                    && (typeface == null ? other.typeface == null
+                            : typeface.equals(other.typeface));
+        }
+
+        @Override
+        public int hashCode() {
+            int result = text.hashCode();
+            result = 31 * result + (typeface != null ? typeface.hashCode() : 0);
+            result = 31 * result + Float.floatToIntBits(textSize);
+            result = 31 * result + Float.floatToIntBits(availableWidth);
+            result = 31 * result + layoutDirection;
+            result = 31 * result + (linearText ? 1 : 0);
+            return result;
+        }
+    }
+}
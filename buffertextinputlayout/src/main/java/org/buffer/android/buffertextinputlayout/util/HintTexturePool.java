@@ -0,0 +1,87 @@
+package org.buffer.android.buffertextinputlayout.util;
+
+import android.graphics.Bitmap;
+import android.graphics.Color;
+
+import java.util.ArrayList;
+
+/**
+ * A process wide pool of the bitmaps which hints are rasterized in to, shared between every
+ * {@link CollapsingTextHelper}. Sizes are rounded up in to buckets so that a bitmap released by
+ * one field, e.g. when it is detached as a list is scrolled, can be reused for a similar hint in
+ * another.
+ * <p>
+ * This must only be used from the main thread.
+ */
+public final class HintTexturePool {
+
+    private static final int BUCKET_SIZE = 16;
+    private static final int MAX_POOLED_BYTES = 2 * 1024 * 1024;
+
+    // Ordered from the least to the most recently released
+    private static final ArrayList<Bitmap> POOL = new ArrayList<>();
+    private static int sPooledBytes;
+
+    private HintTexturePool() {
+    }
+
+    /**
+     * Returns a cleared bitmap which is at least {@code width} by {@code height}.
+     */
+    static Bitmap acquire(int width, int height, Bitmap.Config config) {
+        final int bucketWidth = roundUpToBucket(width);
+        final int bucketHeight = roundUpToBucket(height);
+        for (int i = POOL.size() - 1; i >= 0; i--) {
+            final Bitmap bitmap = POOL.get(i);
+            if (bitmap.getWidth() == bucketWidth && bitmap.getHeight() == bucketHeight
+                    && bitmap.getConfig() == config) {
+                POOL.remove(i);
+                sPooledBytes -= getByteCount(bitmap);
+                bitmap.eraseColor(Color.TRANSPARENT);
+                return bitmap;
+            }
+        }
+        return Bitmap.createBitmap(bucketWidth, bucketHeight, config);
+    }
+
+    /**
+     * Returns a bitmap from {@link #acquire(int, int, Bitmap.Config)} to the pool. The bitmap
+     * must not be used by the caller afterwards.
+     */
+    static void release(Bitmap bitmap) {
+        if (bitmap.isRecycled()) {
+            return;
+        }
+        final int byteCount = getByteCount(bitmap);
+        if (byteCount > MAX_POOLED_BYTES) {
+            bitmap.recycle();
+            return;
+        }
+        while (sPooledBytes + byteCount > MAX_POOLED_BYTES) {
+            final Bitmap eldest = POOL.remove(0);
+            sPooledBytes -= getByteCount(eldest);
+            eldest.recycle();
+        }
+        POOL.add(bitmap);
+        sPooledBytes += byteCount;
+    }
+
+    /**
+     * Recycles every pooled bitmap, e.g. when the system is low on memory.
+     */
+    public static void clear() {
+        for (int i = 0, count = POOL.size(); i < count; i++) {
+            POOL.get(i).recycle();
+        }
+        POOL.clear();
+        sPooledBytes = 0;
+    }
+
+    private static int roundUpToBucket(int size) {
+        return ((size + BUCKET_SIZE - 1) / BUCKET_SIZE) * BUCKET_SIZE;
+    }
+
+    private static int getByteCount(Bitmap bitmap) {
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
@@ -0,0 +1,49 @@
+package org.buffer.android.buffertextinputlayout.util;
+
+import android.view.animation.Interpolator;
+
+/**
+ * An {@link Interpolator} which samples another interpolator in to a table up front, and then
+ * linearly interpolates between the two closest samples. This avoids calls such as
+ * {@link Math#pow(double, double)} on every frame.
+ */
+public class LookupTableInterpolator implements Interpolator {
+
+    private static final int DEFAULT_SIZE = 201;
+
+    private final float[] mValues;
+    private final float mStepSize;
+
+    public LookupTableInterpolator(Interpolator interpolator) {
+        this(interpolator, DEFAULT_SIZE);
+    }
+
+    public LookupTableInterpolator(Interpolator interpolator, int size) {
+        if (size < 2) {
+            throw new IllegalArgumentException("size must be at least 2");
+        }
+        mValues = new float[size];
+        mStepSize = 1f / (size - 1);
+        for (int i = 0; i < size; i++) {
+            mValues[i] = interpolator.getInterpolation(i * mStepSize);
+        }
+        // Make sure the end value is exact, regardless of any rounding in the step size
+        mValues[size - 1] = interpolator.getInterpolation(1f);
+    }
+
+    @Override
+    public float getInterpolation(float input) {
+        if (input <= 0f) {
+            return mValues[0];
+        }
+        if (input >= 1f) {
+            return mValues[mValues.length - 1];
+        }
+        // Calculate the index of the sample at or before the input, and the weight between it
+        // and the next sample
+        final int position = Math.min((int) (input * (mValues.length - 1)), mValues.length - 2);
+        final float weight = (input - (position * mStepSize)) / mStepSize;
+        return mValues[position] + (weight * (mValues[position + 1] - mValues[position]));
+    }
+
+}
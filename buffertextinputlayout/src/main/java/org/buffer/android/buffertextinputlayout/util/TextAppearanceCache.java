@@ -0,0 +1,283 @@
+package org.buffer.android.buffertextinputlayout.util;
+
+import android.content.Context;
+import android.content.res.ColorStateList;
+import android.content.res.Configuration;
+import android.content.res.Resources;
+import android.content.res.TypedArray;
+import android.graphics.Typeface;
+import android.os.Build;
+import android.support.annotation.Nullable;
+import android.support.annotation.StyleRes;
+import android.support.v7.appcompat.R;
+import android.support.v7.widget.TintTypedArray;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.TypedValue;
+import android.widget.TextView;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.WeakHashMap;
+
+/**
+ * A process wide cache of resolved text appearances, keyed by the theme they were resolved
+ * against and their style resource. Every field of a form resolves the same few appearances,
+ * so this saves each of them from obtaining styled attributes and creating typefaces for its
+ * hint, error and counter, and saves the counter from doing so whenever it overflows.
+ * <p>
+ * The cached appearances are immutable and shared. Themes are held weakly. A context with its
+ * own configuration has its own theme, so entries only go stale when a configuration changes in
+ * place, and {@link #onConfigurationChanged(Configuration)} then clears the whole cache. This
+ * must only be used from the main thread.
+ */
+public final class TextAppearanceCache {
+
+    private static final String LOG_TAG = "TextAppearanceCache";
+    // The attrs read alongside AppCompat's TextAppearance styleable. Those besides the typeface
+    // are only checked for, as an appearance which sets them can't be applied from the cache
+    private static final int[] STYLE_ATTRS = {
+            android.R.attr.typeface,
+            android.R.attr.textStyle,
+            android.R.attr.fontFamily,
+            android.R.attr.textColorHighlight,
+            android.R.attr.textColorHint,
+            android.R.attr.textColorLink,
+            android.R.attr.textAllCaps,
+            android.R.attr.elegantTextHeight,
+            android.R.attr.letterSpacing,
+            android.R.attr.fontFeatureSettings
+    };
+    private static final int[] OTHER_ATTRS = {
+            android.R.attr.textColorHighlight,
+            android.R.attr.textColorHint,
+            android.R.attr.textColorLink,
+            android.R.attr.textAllCaps,
+            android.R.attr.elegantTextHeight,
+            android.R.attr.letterSpacing,
+            android.R.attr.fontFeatureSettings
+    };
+
+    static {
+        // obtainStyledAttributes requires the attrs to be sorted by id
+        Arrays.sort(STYLE_ATTRS);
+    }
+
+    private static final int TYPEFACE_INDEX_SANS = 1;
+    private static final int TYPEFACE_INDEX_SERIF = 2;
+    private static final int TYPEFACE_INDEX_MONOSPACE = 3;
+
+    private static final Map<Resources.Theme, SparseArray<Appearance>> CACHE =
+            new WeakHashMap<>();
+    private static Configuration sConfiguration;
+
+    private TextAppearanceCache() {
+    }
+
+    /**
+     * Returns the text appearance {@code resId} resolved against the theme of {@code context},
+     * or null if it can't be resolved, e.g. as the theme doesn't extend from Theme.Design*.
+     */
+    @Nullable
+    public static Appearance get(Context context, @StyleRes int resId) {
+        final Resources.Theme theme = context.getTheme();
+        SparseArray<Appearance> appearances = CACHE.get(theme);
+        if (appearances == null) {
+            appearances = new SparseArray<>();
+            CACHE.put(theme, appearances);
+        }
+        Appearance appearance = appearances.get(resId);
+        if (appearance == null) {
+            try {
+                appearance = Appearance.resolve(context, resId);
+            } catch (Exception e) {
+                Log.e(LOG_TAG, "Unable to resolve text appearance " + resId, e);
+                return null;
+            }
+            appearances.put(resId, appearance);
+        }
+        return appearance;
+    }
+
+    /**
+     * Clears the cache if {@code newConfig} differs from the configuration the cached
+     * appearances were resolved with.
+     */
+    public static void onConfigurationChanged(Configuration newConfig) {
+        if (sConfiguration == null) {
+            // We don't know what the cached appearances were resolved with
+            CACHE.clear();
+            sConfiguration = new Configuration(newConfig);
+        } else if (sConfiguration.diff(newConfig) != 0) {
+            CACHE.clear();
+            sConfiguration.setTo(newConfig);
+        }
+    }
+
+    /**
+     * Empties the cache, e.g. when a theme has been modified.
+     */
+    public static void clear() {
+        CACHE.clear();
+    }
+
+    private static int indexOf(int attr) {
+        return Arrays.binarySearch(STYLE_ATTRS, attr);
+    }
+
+    /**
+     * The attributes of a text appearance which are used by the layout.
+     */
+    public static final class Appearance {
+
+        private final ColorStateList textColor;
+        private final int textSize;
+        private final int shadowColor;
+        private final float shadowDx;
+        private final float shadowDy;
+        private final float shadowRadius;
+        private final Typeface typeface;
+        private final Typeface fontFamilyTypeface;
+        private final int textStyle;
+        // Whether the appearance sets only what applyTo applies
+        private final boolean basic;
+
+        private Appearance(ColorStateList textColor, int textSize, int shadowColor,
+                           float shadowDx, float shadowDy, float shadowRadius, Typeface typeface,
+                           Typeface fontFamilyTypeface, int textStyle, boolean basic) {
+            this.textColor = textColor;
+            this.textSize = textSize;
+            this.shadowColor = shadowColor;
+            this.shadowDx = shadowDx;
+            this.shadowDy = shadowDy;
+            this.shadowRadius = shadowRadius;
+            this.typeface = typeface;
+            this.fontFamilyTypeface = fontFamilyTypeface;
+            this.textStyle = textStyle;
+            this.basic = basic;
+        }
+
+        static Appearance resolve(Context context, @StyleRes int resId) {
+            final TintTypedArray a = TintTypedArray.obtainStyledAttributes(context, resId,
+                    R.styleable.TextAppearance);
+            final ColorStateList textColor;
+            final int textSize;
+            final int shadowColor;
+            final float shadowDx;
+            final float shadowDy;
+            final float shadowRadius;
+            boolean basic;
+            try {
+                textColor = a.getColorStateList(R.styleable.TextAppearance_android_textColor);
+                textSize = a.getDimensionPixelSize(
+                        R.styleable.TextAppearance_android_textSize, -1);
+                shadowColor = a.getInt(R.styleable.TextAppearance_android_shadowColor, 0);
+                shadowDx = a.getFloat(R.styleable.TextAppearance_android_shadowDx, 0);
+                shadowDy = a.getFloat(R.styleable.TextAppearance_android_shadowDy, 0);
+                shadowRadius = a.getFloat(R.styleable.TextAppearance_android_shadowRadius, 0);
+                basic = !a.hasValue(R.styleable.TextAppearance_android_shadowColor)
+                        && !a.hasValue(R.styleable.TextAppearance_textAllCaps);
+            } finally {
+                a.recycle();
+            }
+            final TypedArray t = context.obtainStyledAttributes(resId, STYLE_ATTRS);
+            final int typefaceIndex;
+            final int textStyle;
+            final String fontFamily;
+            try {
+                typefaceIndex = t.getInt(indexOf(android.R.attr.typeface), -1);
+                textStyle = t.getInt(indexOf(android.R.attr.textStyle), Typeface.NORMAL);
+                fontFamily = Build.VERSION.SDK_INT >= 16
+                        ? t.getString(indexOf(android.R.attr.fontFamily)) : null;
+                for (int attr : OTHER_ATTRS) {
+                    basic &= !t.hasValue(indexOf(attr));
+                }
+            } finally {
+                t.recycle();
+            }
+            final Typeface fontFamilyTypeface = fontFamily != null
+                    ? Typeface.create(fontFamily, Typeface.NORMAL) : null;
+            Typeface typeface = fontFamilyTypeface;
+            if (typeface == null) {
+                switch (typefaceIndex) {
+                    case TYPEFACE_INDEX_SANS:
+                        typeface = Typeface.SANS_SERIF;
+                        break;
+                    case TYPEFACE_INDEX_SERIF:
+                        typeface = Typeface.SERIF;
+                        break;
+                    case TYPEFACE_INDEX_MONOSPACE:
+                        typeface = Typeface.MONOSPACE;
+                        break;
+                }
+            }
+            return new Appearance(textColor, textSize, shadowColor, shadowDx, shadowDy,
+                    shadowRadius, typeface, fontFamilyTypeface, textStyle, basic);
+        }
+
+        /**
+         * Returns the text color, or null if the appearance doesn't set one.
+         */
+        @Nullable
+        public ColorStateList getTextColor() {
+            return textColor;
+        }
+
+        public boolean hasTextSize() {
+            return textSize >= 0;
+        }
+
+        /**
+         * Returns the text size in pixels, or -1 if the appearance doesn't set one.
+         */
+        public int getTextSize() {
+            return textSize;
+        }
+
+        public int getShadowColor() {
+            return shadowColor;
+        }
+
+        public float getShadowDx() {
+            return shadowDx;
+        }
+
+        public float getShadowDy() {
+            return shadowDy;
+        }
+
+        public float getShadowRadius() {
+            return shadowRadius;
+        }
+
+        /**
+         * Returns the typeface of the appearance's font family, or null if it doesn't set one.
+         */
+        @Nullable
+        public Typeface getFontFamilyTypeface() {
+            return fontFamilyTypeface;
+        }
+
+        /**
+         * Applies this appearance to {@code view} in the same way as
+         * {@link android.support.v4.widget.TextViewCompat#setTextAppearance}, without resolving
+         * it again. Only the text color, size and typeface are cached, so this does nothing and
+         * returns false if the appearance sets anything else, such as a shadow, all caps, hint
+         * or link colors, letter spacing or font features. The caller should then fall back to
+         * {@code setTextAppearance}.
+         */
+        public boolean applyTo(TextView view) {
+            if (!basic) {
+                return false;
+            }
+            if (textColor != null) {
+                view.setTextColor(textColor);
+            }
+            if (textSize >= 0) {
+                view.setTextSize(TypedValue.COMPLEX_UNIT_PX, textSize);
+            }
+            view.setTypeface(typeface, textStyle);
+            return true;
+        }
+    }
+}
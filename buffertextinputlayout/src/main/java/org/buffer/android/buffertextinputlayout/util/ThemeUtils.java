@@ -16,15 +16,25 @@
 package org.buffer.android.buffertextinputlayout.util;
 
 import android.content.Context;
+import android.content.res.Resources;
 import android.content.res.TypedArray;
 
+import java.util.Map;
+import java.util.WeakHashMap;
+
 public class ThemeUtils {
 
     private static final int[] APPCOMPAT_CHECK_ATTRS = {
             android.support.v7.appcompat.R.attr.colorPrimary
     };
+    // Themes which have passed the check, so that each is only checked once
+    private static final Map<Resources.Theme, Boolean> CHECKED_THEMES = new WeakHashMap<>();
 
     public static void checkAppCompatTheme(Context context) {
+        final Resources.Theme theme = context.getTheme();
+        if (CHECKED_THEMES.containsKey(theme)) {
+            return;
+        }
         TypedArray a = context.obtainStyledAttributes(APPCOMPAT_CHECK_ATTRS);
         final boolean failed = !a.hasValue(0);
         if (a != null) a.recycle();
@@ -32,6 +42,7 @@ public class ThemeUtils {
             throw new IllegalArgumentException("You need to use a Theme.AppCompat theme "
                     + "(or descendant) with the design library.");
         }
+        CHECKED_THEMES.put(theme, Boolean.TRUE);
     }
 
 }
\ No newline at end of file
@@ -27,6 +27,11 @@ class ViewGroupUtilsHoneycomb {
     private static final ThreadLocal<RectF> rectF = new ThreadLocal<>();
 
     static void offsetDescendantRect(ViewGroup group, View child, Rect rect) {
+        if (!hasTransformedAncestor(group, child)) {
+            // Without any transformations the rect is just offset, so avoid the matrix
+            offsetDescendantRectByPosition(group, child, rect);
+            return;
+        }
         Matrix m = matrix.get();
         if (m == null) {
             m = new Matrix();
@@ -48,6 +53,29 @@ class ViewGroupUtilsHoneycomb {
                 (int) (rectF.right + 0.5f), (int) (rectF.bottom + 0.5f));
     }
 
+    private static boolean hasTransformedAncestor(ViewParent target, View view) {
+        while (true) {
+            if (!view.getMatrix().isIdentity()) {
+                return true;
+            }
+            final ViewParent parent = view.getParent();
+            if (!(parent instanceof View) || parent == target) {
+                return false;
+            }
+            view = (View) parent;
+        }
+    }
+
+    private static void offsetDescendantRectByPosition(ViewParent target, View view, Rect rect) {
+        rect.offset(view.getLeft(), view.getTop());
+        ViewParent parent = view.getParent();
+        while (parent instanceof View && parent != target) {
+            final View vp = (View) parent;
+            rect.offset(vp.getLeft() - vp.getScrollX(), vp.getTop() - vp.getScrollY());
+            parent = vp.getParent();
+        }
+    }
+
     private static void offsetDescendantMatrix(ViewParent target, View view, Matrix m) {
         final ViewParent parent = view.getParent();
         if (parent instanceof View && parent != target) {
@@ -15,8 +15,10 @@
  */
 package org.buffer.android.buffertextinputlayout.util;
 
+import android.os.Build;
 import android.support.annotation.NonNull;
 
+import org.buffer.android.buffertextinputlayout.animator.DrivenValueAnimatorImpl;
 import org.buffer.android.buffertextinputlayout.animator.ValueAnimatorCompat;
 import org.buffer.android.buffertextinputlayout.animator.ValueAnimatorCompatImpl;
 
@@ -27,6 +29,10 @@ public class ViewUtils {
         @NonNull
         @Override
         public ValueAnimatorCompat createAnimator() {
+            // Choreographer is only available from JB, so fall back to ValueAnimator before that
+            if (Build.VERSION.SDK_INT >= 16) {
+                return new ValueAnimatorCompat(new DrivenValueAnimatorImpl());
+            }
             return new ValueAnimatorCompat(new ValueAnimatorCompatImpl());
         }
     };
@@ -0,0 +1,112 @@
+package org.buffer.android.buffertextinputlayout;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class EditRangeTest {
+
+    @Test
+    public void keepsASingleEdit() {
+        final EditRange range = new EditRange();
+        range.set(3, 2, 5);
+        assertRange(3, 2, 5, range);
+    }
+
+    @Test
+    public void mergesTyping() {
+        final EditRange range = new EditRange();
+        range.set(4, 0, 1);
+        range.merge(5, 0, 1);
+        range.merge(6, 0, 1);
+        assertRange(4, 0, 3, range);
+    }
+
+    @Test
+    public void mergesBackspacing() {
+        final EditRange range = new EditRange();
+        range.set(9, 1, 0);
+        range.merge(8, 1, 0);
+        range.merge(7, 1, 0);
+        assertRange(7, 3, 0, range);
+    }
+
+    @Test
+    public void mergesAnEditAfterTheRange() {
+        final EditRange range = new EditRange();
+        // "abcdef" -> "aXYdef" -> "aXYdZf"
+        range.set(1, 2, 2);
+        range.merge(4, 1, 1);
+        assertRange(1, 4, 4, range);
+    }
+
+    @Test
+    public void mergesAnEditBeforeTheRange() {
+        final EditRange range = new EditRange();
+        // "abcdef" -> "abcdXf" -> "YbcdXf"
+        range.set(4, 1, 1);
+        range.merge(0, 1, 1);
+        assertRange(0, 5, 5, range);
+    }
+
+    @Test
+    public void mergesAnEditOverlappingTheEndOfTheRange() {
+        final EditRange range = new EditRange();
+        // "abcdef" -> "aXXXXdef" -> "aXXYf"
+        range.set(1, 2, 4);
+        range.merge(3, 4, 1);
+        assertRange(1, 4, 3, range);
+    }
+
+    @Test
+    public void mergesAnEditInsideTheRange() {
+        final EditRange range = new EditRange();
+        range.set(2, 1, 6);
+        range.merge(4, 2, 0);
+        assertRange(2, 1, 4, range);
+    }
+
+    @Test
+    public void mergedRangeReproducesRandomEdits() {
+        final Random random = new Random(5);
+        for (int run = 0; run < 500; run++) {
+            final StringBuilder original = new StringBuilder();
+            for (int i = random.nextInt(20); i > 0; i--) {
+                original.append((char) ('a' + random.nextInt(26)));
+            }
+            final StringBuilder text = new StringBuilder(original);
+            final EditRange range = new EditRange();
+            final int edits = 1 + random.nextInt(6);
+            for (int edit = 0; edit < edits; edit++) {
+                final int start = random.nextInt(text.length() + 1);
+                final int before = random.nextInt(text.length() - start + 1);
+                final int count = random.nextInt(4);
+                final StringBuilder inserted = new StringBuilder();
+                for (int i = 0; i < count; i++) {
+                    inserted.append((char) ('A' + random.nextInt(26)));
+                }
+                text.replace(start, start + before, inserted.toString());
+                if (edit == 0) {
+                    range.set(start, before, count);
+                } else {
+                    range.merge(start, before, count);
+                }
+            }
+
+            // Replacing the merged range in the original text must give the current text
+            final int start = range.getStart();
+            final String replaced = original.substring(0, start)
+                    + text.substring(start, start + range.getCount())
+                    + original.substring(start + range.getBefore());
+            assertEquals(text.toString(), replaced);
+        }
+    }
+
+    private static void assertRange(int start, int before, int count, EditRange range) {
+        assertEquals("start", start, range.getStart());
+        assertEquals("before", before, range.getBefore());
+        assertEquals("count", count, range.getCount());
+    }
+}
@@ -0,0 +1,101 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+import org.junit.Test;
+
+import java.text.BreakIterator;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class CountIndexTest {
+
+    @Test
+    public void offsetAtCountStepsOneGraphemeAtATime() {
+        final String text = "abcdef";
+        final CountIndex index = new CountIndex(new GraphemeCounterStrategy(Locale.US));
+        index.reset(text);
+        for (int count = 0; count <= text.length(); count++) {
+            assertEquals(count, index.getOffsetAtCount(text, count));
+        }
+    }
+
+    @Test
+    public void offsetAtCountKeepsClustersWhole() {
+        // a, an e with a combining acute accent, then b
+        final String text = "ae\u0301b";
+        final CountIndex index = new CountIndex(new GraphemeCounterStrategy(Locale.US));
+        index.reset(text);
+        assertEquals(3, index.getCount());
+        assertEquals(1, index.getOffsetAtCount(text, 1));
+        assertEquals(3, index.getOffsetAtCount(text, 2));
+        assertEquals(4, index.getOffsetAtCount(text, 3));
+    }
+
+    @Test
+    public void offsetAtCountKeepsSurrogatePairsWhole() {
+        final String text = "a\uD83D\uDE00b";
+        final CountIndex index = new CountIndex(new CodePointCounterStrategy());
+        index.reset(text);
+        assertEquals(1, index.getOffsetAtCount(text, 1));
+        assertEquals(3, index.getOffsetAtCount(text, 2));
+    }
+
+    @Test
+    public void offsetAtCountMatchesBreakIteratorAcrossChunks() {
+        final Random random = new Random(1);
+        final StringBuilder text = new StringBuilder(randomText(random, 2000));
+        final CountIndex index = new CountIndex(new GraphemeCounterStrategy(Locale.US));
+        index.reset(text);
+        for (int edit = 0; edit < 200; edit++) {
+            final int start = random.nextInt(text.length() + 1);
+            final int before = Math.min(text.length() - start, random.nextInt(8));
+            final String inserted = randomText(random, random.nextInt(8));
+            text.replace(start, start + before, inserted);
+            index.onTextChanged(text, start, before, inserted.length());
+        }
+        final int[] boundaries = graphemeBoundaries(text.toString());
+        assertEquals(boundaries.length - 1, index.getCount());
+        for (int count = 0; count < boundaries.length; count += 7) {
+            assertEquals(boundaries[count], index.getOffsetAtCount(text, count));
+            assertEquals(count, index.getCountBefore(text, boundaries[count]));
+        }
+    }
+
+    @Test
+    public void offsetAtCountCountsUrlsAsAWhole() {
+        final String text = "see https://example.com now";
+        final CountIndex index = new CountIndex(WeightedCounterStrategy.twitter());
+        index.reset(text);
+        assertEquals(4 + 23 + 4, index.getCount());
+        assertEquals(4, index.getOffsetAtCount(text, 4));
+        assertEquals(4, index.getOffsetAtCount(text, 26));
+        assertEquals(23, index.getOffsetAtCount(text, 27));
+    }
+
+    static String randomText(Random random, int length) {
+        final String[] pieces = {"a", "b", " ", ".", "\u4E2D", "\uD83D\uDE00",
+                "\uD83D\uDC4D\uD83C\uDFFD", "e\u0301", "\uD83D\uDC68\u200D\uD83D\uDC69",
+                "https://", "x.com", "\n"};
+        final StringBuilder builder = new StringBuilder();
+        while (builder.length() < length) {
+            builder.append(pieces[random.nextInt(pieces.length)]);
+        }
+        return builder.toString();
+    }
+
+    private static int[] graphemeBoundaries(String text) {
+        final BreakIterator iterator = BreakIterator.getCharacterInstance(Locale.US);
+        iterator.setText(text);
+        int count = 0;
+        for (int b = iterator.first(); b != BreakIterator.DONE; b = iterator.next()) {
+            count++;
+        }
+        final int[] boundaries = new int[count];
+        int i = 0;
+        for (int b = iterator.first(); b != BreakIterator.DONE; b = iterator.next()) {
+            boundaries[i++] = b;
+        }
+        return boundaries;
+    }
+}
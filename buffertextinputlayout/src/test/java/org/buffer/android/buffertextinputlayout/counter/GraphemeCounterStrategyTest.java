@@ -0,0 +1,131 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Pins the counts of emoji sequences under the segmentation rules which ICU applies on Android,
+ * which the JDK's iterator doesn't implement.
+ */
+public class GraphemeCounterStrategyTest {
+
+    private static final String ZWJ = "\u200D";
+    private static final String MAN = "\uD83D\uDC68";
+    private static final String WOMAN = "\uD83D\uDC69";
+    private static final String GIRL = "\uD83D\uDC67";
+    private static final String THUMBS_UP = "\uD83D\uDC4D";
+    private static final String MEDIUM_SKIN_TONE = "\uD83C\uDFFD";
+    // The regional indicators G, B, F and R
+    private static final String G = "\uD83C\uDDEC";
+    private static final String B = "\uD83C\uDDE7";
+    private static final String F = "\uD83C\uDDEB";
+    private static final String R = "\uD83C\uDDF7";
+
+    @Test
+    public void zwjSequencesCountAsOne() {
+        assertCount(1, MAN + ZWJ + WOMAN + ZWJ + GIRL);
+        assertCount(1, THUMBS_UP + MEDIUM_SKIN_TONE);
+        assertCount(2, G + B + F + R);
+    }
+
+    @Test
+    public void zwjOnlyJoinsAfterAnEmoji() {
+        assertCount(2, "a" + ZWJ + THUMBS_UP);
+        assertCount(1, MAN + ZWJ + THUMBS_UP);
+    }
+
+    @Test
+    public void editingTheEmojiBeforeAZwjJoinsTheFollowingEmoji() {
+        final StringBuilder text = new StringBuilder("a" + ZWJ + THUMBS_UP);
+        final IncrementalCounter counter = new IncrementalCounter(newStrategy());
+        counter.reset(text);
+        assertEquals(2, counter.getCount());
+        replace(counter, text, 0, 1, MAN);
+        assertEquals(1, counter.getCount());
+        replace(counter, text, 0, MAN.length(), "a");
+        assertEquals(2, counter.getCount());
+    }
+
+    @Test
+    public void insertingARegionalIndicatorRepairsTheFlagsAfterIt() {
+        final StringBuilder text = new StringBuilder(G + B + F + R);
+        final IncrementalCounter counter = new IncrementalCounter(newStrategy());
+        counter.reset(text);
+        replace(counter, text, 0, 0, F);
+        // F G, B F, R
+        assertEquals(3, counter.getCount());
+        replace(counter, text, 0, F.length(), "");
+        assertEquals(2, counter.getCount());
+    }
+
+    @Test
+    public void emojiEditsMatchFullRecount() {
+        final String[] pieces = {"a", " ", ZWJ, MAN, WOMAN, THUMBS_UP, MEDIUM_SKIN_TONE, G, B,
+                F, R, "e\u0301", "\uFE0F"};
+        final GraphemeCounterStrategy strategy = newStrategy();
+        final Random random = new Random(5);
+        final StringBuilder text = new StringBuilder();
+        final IncrementalCounter counter = new IncrementalCounter(strategy);
+        final CountIndex index = new CountIndex(newStrategy());
+        counter.reset(text);
+        index.reset(text);
+        for (int edit = 0; edit < 2000; edit++) {
+            final int start = boundaryNear(text, random.nextInt(text.length() + 1));
+            final int end = boundaryNear(text,
+                    Math.min(text.length(), start + random.nextInt(5)));
+            final StringBuilder inserted = new StringBuilder();
+            for (int i = random.nextInt(4); i > 0; i--) {
+                inserted.append(pieces[random.nextInt(pieces.length)]);
+            }
+            counter.beforeTextChanged(text, start, end - start, inserted.length());
+            text.replace(start, end, inserted.toString());
+            counter.onTextChanged(text, start, end - start, inserted.length());
+            index.onTextChanged(text, start, end - start, inserted.length());
+            final int expected = strategy.count(text, 0, text.length());
+            assertEquals("After editing to " + escape(text), expected, counter.getCount());
+            assertEquals("After editing to " + escape(text), expected, index.getCount());
+            if (text.length() > 200) {
+                text.setLength(0);
+                counter.reset(text);
+                index.reset(text);
+            }
+        }
+    }
+
+    private static GraphemeCounterStrategy newStrategy() {
+        return new GraphemeCounterStrategy(new ExtendedGraphemeBreakIterator());
+    }
+
+    private static void assertCount(int expected, String text) {
+        assertEquals(escape(text), expected, newStrategy().count(text, 0, text.length()));
+    }
+
+    private static void replace(IncrementalCounter counter, StringBuilder text, int start,
+                                int end, String replacement) {
+        counter.beforeTextChanged(text, start, end - start, replacement.length());
+        text.replace(start, end, replacement);
+        counter.onTextChanged(text, start, end - start, replacement.length());
+    }
+
+    // Keeps edits from splitting a surrogate pair, as an input method wouldn't
+    private static int boundaryNear(CharSequence text, int offset) {
+        return offset > 0 && offset < text.length()
+                && Character.isLowSurrogate(text.charAt(offset)) ? offset - 1 : offset;
+    }
+
+    private static String escape(CharSequence text) {
+        final StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < text.length(); i++) {
+            final char c = text.charAt(i);
+            if (c < 0x80) {
+                builder.append(c);
+            } else {
+                builder.append(String.format("\\u%04X", (int) c));
+            }
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,66 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+import org.junit.Test;
+
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+public class IncrementalCounterTest {
+
+    @Test
+    public void lengthMatchesFullRecount() {
+        assertMatchesFullRecount(new LengthCounterStrategy());
+    }
+
+    @Test
+    public void codePointsMatchFullRecount() {
+        assertMatchesFullRecount(new CodePointCounterStrategy());
+    }
+
+    @Test
+    public void graphemesMatchFullRecount() {
+        assertMatchesFullRecount(new GraphemeCounterStrategy(Locale.US));
+    }
+
+    @Test
+    public void weightsMatchFullRecount() {
+        assertMatchesFullRecount(WeightedCounterStrategy.twitter());
+    }
+
+    @Test
+    public void slotsAreCountedTogether() {
+        final IncrementalCounter counter = new IncrementalCounter(new LengthCounterStrategy());
+        counter.setStrategies(new CounterStrategy[]{new LengthCounterStrategy(),
+                new CodePointCounterStrategy()}, "a\uD83D\uDE00");
+        assertEquals(3, counter.getCount(0));
+        assertEquals(2, counter.getCount(1));
+    }
+
+    @Test
+    public void recountsWhenTrackingIsLost() {
+        final IncrementalCounter counter = new IncrementalCounter(new LengthCounterStrategy());
+        counter.reset("abc");
+        // The text changed without beforeTextChanged being called
+        counter.onTextChanged("abcdef", 3, 0, 3);
+        assertEquals(6, counter.getCount());
+    }
+
+    private static void assertMatchesFullRecount(CounterStrategy strategy) {
+        final Random random = new Random(7);
+        final StringBuilder text = new StringBuilder();
+        final IncrementalCounter counter = new IncrementalCounter(strategy);
+        counter.reset(text);
+        for (int edit = 0; edit < 500; edit++) {
+            final int start = random.nextInt(text.length() + 1);
+            final int before = Math.min(text.length() - start, random.nextInt(6));
+            final String inserted = CountIndexTest.randomText(random, random.nextInt(6));
+            counter.beforeTextChanged(text, start, before, inserted.length());
+            text.replace(start, start + before, inserted);
+            counter.onTextChanged(text, start, before, inserted.length());
+            assertEquals("After editing to \"" + text + "\"",
+                    strategy.count(text, 0, text.length()), counter.getCount());
+        }
+    }
+}
@@ -0,0 +1,179 @@
+package org.buffer.android.buffertextinputlayout.counter;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class WeightedCounterStrategyTest {
+
+    private final WeightedCounterStrategy strategy = WeightedCounterStrategy.twitter();
+
+    @Test
+    public void countsUrlsAsTheUrlWeight() {
+        final String text = "see https://example.com/path, ok";
+        assertEquals(4 + 23 + 4, strategy.count(text, 0, text.length()));
+    }
+
+    @Test
+    public void onlyCountsUrlsWithASchemeAsTheUrlWeight() {
+        assertCount(8, "file.txt");
+        assertCount(8, "Mr.Smith");
+        assertCount(7, "v1.beta");
+        assertCount(11, "example.com");
+        assertCount(23, "http://example.com");
+    }
+
+    @Test
+    public void countsEmojiSequencesAsTwo() {
+        // A family, a thumbs up with a skin tone, a rainbow flag and the flag of Great Britain
+        assertCount(2, "\uD83D\uDC68\u200D\uD83D\uDC69\u200D\uD83D\uDC67\u200D\uD83D\uDC66");
+        assertCount(2, "\uD83D\uDC4D\uD83C\uDFFD");
+        assertCount(2, "\uD83C\uDFF3\uFE0F\u200D\uD83C\uDF08");
+        assertCount(2, "\uD83C\uDDEC\uD83C\uDDE7");
+        // A ZWJ only joins on to an emoji
+        assertCount(4, "a\u200D\uD83D\uDC4D");
+        assertCount(5, "\uD83D\uDC4D \uD83D\uDC4D");
+    }
+
+    @Test
+    public void emojiEditsMatchFullRecount() {
+        final Random random = new Random(11);
+        final String[] pieces = {"a", " ", "\u200D", "\uFE0F", "\uD83D\uDC68", "\uD83D\uDC4D",
+                "\uD83C\uDFFD", "\uD83C\uDDEC", "\u2764", "\u4E2D", "http://x.com", "e\u0301"};
+        final StringBuilder text = new StringBuilder();
+        final IncrementalCounter counter = new IncrementalCounter(strategy);
+        final CountIndex index = new CountIndex(strategy);
+        counter.reset(text);
+        index.reset(text);
+        for (int edit = 0; edit < 3000; edit++) {
+            final int start = random.nextInt(text.length() + 1);
+            final int before = Math.min(text.length() - start, random.nextInt(6));
+            final StringBuilder inserted = new StringBuilder();
+            for (int i = random.nextInt(4); i > 0; i--) {
+                inserted.append(pieces[random.nextInt(pieces.length)]);
+            }
+            counter.beforeTextChanged(text, start, before, inserted.length());
+            text.replace(start, start + before, inserted.toString());
+            counter.onTextChanged(text, start, before, inserted.length());
+            index.onTextChanged(text, start, before, inserted.length());
+            final int expected = strategy.count(text, 0, text.length());
+            assertEquals(expected, counter.getCount());
+            assertEquals(expected, index.getCount());
+            if (text.length() > 600) {
+                text.setLength(0);
+                counter.reset(text);
+                index.reset(text);
+            }
+        }
+    }
+
+    @Test
+    public void offsetAtCountKeepsEmojiSequencesWhole() {
+        final String family = "\uD83D\uDC68\u200D\uD83D\uDC69\u200D\uD83D\uDC67";
+        final String text = "a" + family + "b";
+        final CountIndex index = new CountIndex(strategy);
+        index.reset(text);
+        assertEquals(4, index.getCount());
+        assertEquals(1, index.getOffsetAtCount(text, 1));
+        assertEquals(1, index.getOffsetAtCount(text, 2));
+        assertEquals(1 + family.length(), index.getOffsetAtCount(text, 3));
+    }
+
+    @Test
+    public void countsRunsLongerThanAUrlCharByChar() {
+        final String text = "https://" + repeat('a', WeightedCounterStrategy.MAX_URL_LENGTH)
+                + ".com";
+        assertEquals(text.length(), strategy.count(text, 0, text.length()));
+    }
+
+    @Test
+    public void longRunsMatchFullRecount() {
+        final Random random = new Random(3);
+        final String[] pieces = {"a", "Z", "0", "/", ".", ".com", "https://", " "};
+        final StringBuilder text = new StringBuilder(
+                repeat('a', WeightedCounterStrategy.MAX_URL_LENGTH - 2));
+        final IncrementalCounter counter = new IncrementalCounter(strategy);
+        counter.reset(text);
+        for (int edit = 0; edit < 300; edit++) {
+            final int start = random.nextInt(text.length() + 1);
+            final int before = Math.min(text.length() - start, random.nextInt(4));
+            final String inserted = edit % 50 == 49 ? "" : pieces[random.nextInt(pieces.length)];
+            counter.beforeTextChanged(text, start, before, inserted.length());
+            text.replace(start, start + before, inserted);
+            counter.onTextChanged(text, start, before, inserted.length());
+            assertEquals(strategy.count(text, 0, text.length()), counter.getCount());
+        }
+    }
+
+    @Test
+    public void editsInLongRunsOnlyReadAroundTheEdit() {
+        final CountingCharSequence text = new CountingCharSequence(repeat('a', 200000));
+        final IncrementalCounter counter = new IncrementalCounter(strategy);
+        counter.reset(text);
+        text.reads = 0;
+        final int start = 100000;
+        counter.beforeTextChanged(text, start, 1, 1);
+        text.builder.setCharAt(start, 'b');
+        counter.onTextChanged(text, start, 1, 1);
+        assertEquals(200000, counter.getCount());
+        assertTrue("Read " + text.reads + " chars",
+                text.reads < 16 * WeightedCounterStrategy.MAX_URL_LENGTH);
+    }
+
+    @Test
+    public void offsetAtCountStepsThroughLongRuns() {
+        final String text = "x " + repeat('a', 3 * WeightedCounterStrategy.MAX_URL_LENGTH);
+        final CountIndex index = new CountIndex(strategy);
+        index.reset(text);
+        assertEquals(text.length(), index.getCount());
+        for (int count = 0; count < text.length(); count += 997) {
+            assertEquals(count, index.getOffsetAtCount(text, count));
+        }
+    }
+
+    private void assertCount(int expected, String text) {
+        assertEquals(text, expected, strategy.count(text, 0, text.length()));
+    }
+
+    private static String repeat(char c, int times) {
+        final StringBuilder builder = new StringBuilder(times);
+        for (int i = 0; i < times; i++) {
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private static final class CountingCharSequence implements CharSequence {
+
+        final StringBuilder builder;
+        int reads;
+
+        CountingCharSequence(String text) {
+            builder = new StringBuilder(text);
+        }
+
+        @Override
+        public int length() {
+            return builder.length();
+        }
+
+        @Override
+        public char charAt(int index) {
+            reads++;
+            return builder.charAt(index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return builder.subSequence(start, end);
+        }
+
+        @Override
+        public String toString() {
+            return builder.toString();
+        }
+    }
+}